@@ -2,8 +2,11 @@ package ctlab.mc5;
 
 import ctlab.mc5.bn.BayesianNetwork;
 import ctlab.mc5.bn.Variable;
+import ctlab.mc5.bn.sf.ScoreCache;
 import ctlab.mc5.bn.sf.ScoringFunction;
 import ctlab.mc5.graph.Graph;
+import ctlab.mc5.io.ExpressionCache;
+import ctlab.mc5.io.ExpressionTable;
 import ctlab.mc5.mcmc.EdgeList;
 import ctlab.mc5.mcmc.EstimatorParams;
 import ctlab.mc5.mcmc.NetworkEstimator;
@@ -26,33 +29,14 @@ public class Main {
     private NetworkEstimator estimator;
     private BayesianNetwork bn;
 
-    private List<Variable> parseGETable(File file) throws FileNotFoundException {
-        List<Variable> res = new ArrayList<>();
-        List<String> names = new ArrayList<>();
-        List<List<Double>> data = new ArrayList<>();
-        try (Scanner sc = new Scanner(file).useLocale(Locale.US)) {
-            String firstLine = sc.nextLine();
-            Scanner line_sc = new Scanner(firstLine).useLocale(Locale.US);
-            while (line_sc.hasNext()) {
-                names.add(line_sc.next());
-            }
-
-            int n = names.size();
-            for (int i = 0; i < n; i++) {
-                data.add(new ArrayList<>());
-            }
-            while (sc.hasNext()) {
-                for (int i = 0; i < n; i++) {
-                    data.get(i).add(sc.nextDouble());
-                }
-            }
-
-            for (int i = 0; i < n; i++) {
-                res.add(new Variable(names.get(i), data.get(i), params.defaultCls(), i));
-            }
+    private List<Variable> parseGETable(File file) throws IOException {
+        ExpressionTable table;
+        if (params.geCache() != null) {
+            table = ExpressionCache.load(file, params.geCache());
+        } else {
+            table = ExpressionTable.read(file);
         }
-
-        return res;
+        return table.variables(params.defaultCls());
     }
 
     private Graph parseBound(BayesianNetwork bn) throws FileNotFoundException {
@@ -132,10 +116,14 @@ public class Main {
         System.out.println("Working Directory = " + System.getProperty("user.dir"));
         System.out.println("Parameters:");
         System.out.println("geneExpressionFile = " + params.geneExpressionFile().getPath());
+        if (params.geCache() != null)
+            System.out.println("ge-cache = " + params.geCache().getPath());
         if (params.tf() != null)
             System.out.println("tf = " + params.tf().getPath());
         if (params.gold() != null)
             System.out.println("gold = " + params.gold().getPath());
+        System.out.println("counting-backend = " + params.countingBackend());
+        System.out.println("score-cache = " + params.scoreCacheMB() + " MB, " + params.scoreCachePolicy());
         System.out.println("threads = " + estimatorParams.nThreads());
         System.out.println("runs = " + estimatorParams.nRuns());
         System.out.println("chains = " + estimatorParams.chains());
@@ -147,6 +135,11 @@ public class Main {
         System.out.println("steps-power-base = " + estimatorParams.powerBase());
         System.out.println("temperature-delta = " + estimatorParams.deltaT());
         System.out.println("swap-period = " + estimatorParams.swapPeriod());
+        System.out.println("target-swap-acceptance = " + estimatorParams.targetSwapAcceptance());
+        System.out.println("swap-mode = " + estimatorParams.swapMode());
+        System.out.println("async-swaps = " + estimatorParams.asyncSwaps());
+        System.out.println("transition-sampler = " + estimatorParams.transitionSampler());
+        System.out.println("action-sampler = " + estimatorParams.actionSampler());
     }
 
     private void run(Parameters params, EstimatorParams estimatorParams) throws IOException {
@@ -154,9 +147,13 @@ public class Main {
         this.params = params;
         List<Variable> genes = parseGETable(params.geneExpressionFile());
 
+        if (Math.max(params.discLB(), params.discUB()) > Variable.MAX_CLASSES) {
+            System.err.println("Discretization limits are capped at " + Variable.MAX_CLASSES + " classes");
+        }
         for (Variable v : genes) {
-            int lb = maxMin(2, v.obsNum(), params.discLB());
-            int ub = maxMin(2, v.obsNum(), params.discUB());
+            int maxClasses = Math.min(v.obsNum(), Variable.MAX_CLASSES);
+            int lb = maxMin(2, maxClasses, params.discLB());
+            int ub = maxMin(2, maxClasses, params.discUB());
             if (lb > ub) {
                 int tmp = lb;
                 lb = ub;
@@ -165,6 +162,8 @@ public class Main {
             v.setDiscLimits(lb, ub);
         }
 
+        params.mainSF().setCountingBackend(params.countingBackend());
+        params.mainSF().setCache(ScoreCache.withBudget(params.scoreCacheMB() << 20, params.scoreCachePolicy()));
         bn = new BayesianNetwork(genes, params.mainSF());
         List<List<Variable>> tf = getTF(params.tf(), bn);
         bn.clearEdges();
@@ -181,6 +180,8 @@ public class Main {
                 TimeUnit.MILLISECONDS.toSeconds(elapsed_time) -
                         TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(elapsed_time)));
 
+        System.out.println("Score cache: " + bn.getScoringFunction().getCache());
+
         writeResults(new OutputStreamWriter(new FileOutputStream(params.output())));
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -1,5 +1,7 @@
 package ctlab.mc5;
 
+import ctlab.mc5.bn.sf.CountingBackend;
+import ctlab.mc5.bn.sf.ScoreCache;
 import ctlab.mc5.bn.sf.ScoringFunction;
 import picocli.CommandLine.*;
 
@@ -12,12 +14,24 @@ interface Parameters {
     @Option(names = "--discretization-sf", defaultValue = "BDE 1")
     ScoringFunction discSF();
 
+    @Option(names = "--counting-backend", defaultValue = "COLUMNAR")
+    CountingBackend countingBackend();
+
+    @Option(names = "--score-cache-mb", defaultValue = "64")
+    long scoreCacheMB();
+
+    @Option(names = "--score-cache-policy", defaultValue = "LRU")
+    ScoreCache.Policy scoreCachePolicy();
+
     @Option(names = "--preranking")
     File preranking();
 
     @Option(names = {"-g", "--gene-expression-table"}, required = true)
     File geneExpressionFile();
 
+    @Option(names = "--ge-cache")
+    File geCache();
+
     @Option(names = {"-tf"})
     File tf();
 
@@ -1,10 +1,15 @@
 package ctlab.mc5;
 
+import ctlab.mc5.algo.SamplerType;
 import ctlab.mc5.bn.BayesianNetwork;
 import ctlab.mc5.bn.Variable;
+import ctlab.mc5.bn.sf.ScoreCache;
 import ctlab.mc5.bn.sf.ScoringFunction;
+import ctlab.mc5.io.ExpressionCache;
+import ctlab.mc5.io.ExpressionTable;
 import ctlab.mc5.mcmc.EdgeList;
 import ctlab.mc5.mcmc.EstimatorParams;
+import ctlab.mc5.mcmc.MetaModel;
 import ctlab.mc5.mcmc.NetworkEstimator;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaRDD;
@@ -32,32 +37,14 @@ public class SparkMain {
     private Parameters params;
     private BayesianNetwork bn;
 
-    private List<Variable> parseGETable(File file) throws FileNotFoundException {
-        List<Variable> res = new ArrayList<>();
-        List<String> names = new ArrayList<>();
-        List<List<Double>> data = new ArrayList<>();
-        try (Scanner sc = new Scanner(file).useLocale(Locale.US)) {
-            String firstLine = sc.nextLine();
-            Scanner line_sc = new Scanner(firstLine).useLocale(Locale.US);
-            while (line_sc.hasNext()) {
-                names.add(line_sc.next());
-            }
-
-            int n = names.size();
-            for (int i = 0; i < n; i++) {
-                data.add(new ArrayList<>());
-            }
-            while (sc.hasNext()) {
-                for (int i = 0; i < n; i++) {
-                    data.get(i).add(sc.nextDouble());
-                }
-            }
-
-            for (int i = 0; i < n; i++) {
-                res.add(new Variable(names.get(i), data.get(i), params.defaultCls(), i));
-            }
+    private List<Variable> parseGETable(File file) throws IOException {
+        ExpressionTable table;
+        if (params.geCache() != null) {
+            table = ExpressionCache.load(file, params.geCache());
+        } else {
+            table = ExpressionTable.read(file);
         }
-        return res;
+        return table.variables(params.defaultCls());
     }
 
     public static void main(String[] args) {
@@ -120,9 +107,13 @@ public class SparkMain {
         this.params = params;
         final List<Variable> genes = parseGETable(params.geneExpressionFile());
 
+        if (Math.max(params.discLB(), params.discUB()) > Variable.MAX_CLASSES) {
+            System.err.println("Discretization limits are capped at " + Variable.MAX_CLASSES + " classes");
+        }
         for (Variable v : genes) {
-            int lb = maxMin(2, v.obsNum(), params.discLB());
-            int ub = maxMin(2, v.obsNum(), params.discUB());
+            int maxClasses = Math.min(v.obsNum(), Variable.MAX_CLASSES);
+            int lb = maxMin(2, maxClasses, params.discLB());
+            int ub = maxMin(2, maxClasses, params.discUB());
             if (lb > ub) {
                 int tmp = lb;
                 lb = ub;
@@ -147,6 +138,8 @@ public class SparkMain {
         JavaSparkContext sparkContext = new JavaSparkContext(sparkConf);
 
         final ScoringFunction sf = params.mainSF();
+        sf.setCountingBackend(params.countingBackend());
+        sf.setCache(ScoreCache.withBudget(params.scoreCacheMB() << 20, params.scoreCachePolicy()));
         final int chains = estimatorParams.chains();
         final int batchSize = estimatorParams.batchSize();
         final int mainCacheSize = estimatorParams.mainCacheSize();
@@ -156,6 +149,12 @@ public class SparkMain {
         final long coldChainSteps = estimatorParams.coldChainSteps();
         final long warmup = estimatorParams.warmup();
         final double powerBase = estimatorParams.powerBase();
+        final SamplerType transitionSampler = estimatorParams.transitionSampler();
+        final SamplerType actionSampler = estimatorParams.actionSampler();
+        final double deltaT = estimatorParams.deltaT();
+        final double targetSwapAcceptance = estimatorParams.targetSwapAcceptance();
+        final MetaModel.SwapMode swapMode = estimatorParams.swapMode();
+        final boolean asyncSwaps = estimatorParams.asyncSwaps();
 
         bn = new BayesianNetwork(genes, sf);
 
@@ -176,6 +175,9 @@ public class SparkMain {
                                                 coldChainSteps,
                                                 warmup,
                                                 powerBase, null);
+                                        task.setSamplers(transitionSampler, actionSampler);
+                                        task.setLadder(deltaT, targetSwapAcceptance);
+                                        task.setSwapMode(swapMode, asyncSwaps);
                                         task.run();
                                         return task.getResult();
                                     } catch (Error | Exception e) {
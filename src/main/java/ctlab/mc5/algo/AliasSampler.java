@@ -0,0 +1,128 @@
+package ctlab.mc5.algo;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Walker alias table. Updates only mark the table as stale, it is rebuilt in O(n) by the next call
+ * of {@link #likelihood()} or {@link #randomChoice(SplittableRandom)}, after that every choice costs O(1).
+ */
+public class AliasSampler implements Sampler {
+    private final double[] lls;
+    private final double[] prob;
+    private final int[] alias;
+    private final int[] small;
+    private final int[] large;
+    private final int n;
+    private final double beta;
+
+    private double likelihood;
+    private boolean stale;
+
+    public AliasSampler(int size) {
+        this(size, 1.0);
+    }
+
+    public AliasSampler(int size, double beta) {
+        this.beta = beta;
+        n = size;
+        lls = new double[n];
+        prob = new double[n];
+        alias = new int[n];
+        small = new int[n];
+        large = new int[n];
+        Arrays.fill(lls, Double.NEGATIVE_INFINITY);
+        stale = true;
+    }
+
+    private void rebuild() {
+        stale = false;
+        double offset = Double.NEGATIVE_INFINITY;
+        int top = 0;
+        for (int k = 0; k < n; k++) {
+            double x = Math.min(beta * lls[k], 0.0);
+            if (x > offset) {
+                offset = x;
+                top = k;
+            }
+        }
+        if (offset == Double.NEGATIVE_INFINITY) {
+            likelihood = Double.NEGATIVE_INFINITY;
+            return;
+        }
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            prob[k] = Math.exp(Math.min(beta * lls[k], 0.0) - offset);
+            total += prob[k];
+        }
+        likelihood = offset + Math.log(total);
+
+        int smallSize = 0;
+        int largeSize = 0;
+        for (int k = 0; k < n; k++) {
+            prob[k] *= n / total;
+            alias[k] = k;
+            if (prob[k] < 1) {
+                small[smallSize++] = k;
+            } else {
+                large[largeSize++] = k;
+            }
+        }
+        while (smallSize > 0 && largeSize > 0) {
+            int s = small[--smallSize];
+            int l = large[largeSize - 1];
+            alias[s] = l;
+            prob[l] -= 1 - prob[s];
+            if (prob[l] < 1) {
+                largeSize--;
+                small[smallSize++] = l;
+            }
+        }
+        // leftovers differ from 1 by rounding only
+        while (largeSize > 0) {
+            prob[large[--largeSize]] = 1;
+        }
+        while (smallSize > 0) {
+            int s = small[--smallSize];
+            if (prob[s] > 0) {
+                prob[s] = 1;
+            } else {
+                alias[s] = top;
+            }
+        }
+    }
+
+    @Override
+    public void set(int k, double ll) {
+        if (Double.isNaN(ll)) {
+            throw new IllegalArgumentException();
+        }
+        lls[k] = ll;
+        stale = true;
+    }
+
+    @Override
+    public double get(int k) {
+        return lls[k];
+    }
+
+    @Override
+    public double likelihood() {
+        if (stale) {
+            rebuild();
+        }
+        return likelihood;
+    }
+
+    @Override
+    public int randomChoice(SplittableRandom re) {
+        if (stale) {
+            rebuild();
+        }
+        if (likelihood == Double.NEGATIVE_INFINITY) {
+            return 0;
+        }
+        int k = re.nextInt(n);
+        return re.nextDouble() < prob[k] ? k : alias[k];
+    }
+}
@@ -0,0 +1,133 @@
+package ctlab.mc5.algo;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Fenwick tree over weights {@code exp(x_k - offset)} where {@code x_k = min(beta * ll_k, 0)} and the offset is
+ * the maximum of x at the last renormalization. Updates add differences of weights, so rounding errors accumulate
+ * and the tree is rebuilt from the log-likelihoods after every {@code size} updates, when a weight outgrows the
+ * offset too much or when the total becomes negligible compared to the weights it was computed from.
+ */
+public class FenwickSampler implements Sampler {
+    private static final double MAX_SHIFT = 256;
+    private static final double PRECISION = 1e-9;
+
+    private final double[] lls;
+    private final double[] weights;
+    private final double[] tree;
+    private final int n;
+    private final double beta;
+
+    private double offset;
+    private double total;
+    private double peak;
+    private int updates;
+
+    public FenwickSampler(int size) {
+        this(size, 1.0);
+    }
+
+    public FenwickSampler(int size, double beta) {
+        this.beta = beta;
+        n = size;
+        lls = new double[n];
+        weights = new double[n];
+        tree = new double[n + 1];
+        Arrays.fill(lls, Double.NEGATIVE_INFINITY);
+    }
+
+    private double logWeight(int k) {
+        return Math.min(beta * lls[k], 0.0);
+    }
+
+    private void rebuild() {
+        offset = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < n; k++) {
+            offset = Math.max(offset, logWeight(k));
+        }
+        if (offset == Double.NEGATIVE_INFINITY) {
+            offset = 0;
+        }
+        Arrays.fill(tree, 0);
+        total = 0;
+        peak = 0;
+        for (int k = 0; k < n; k++) {
+            weights[k] = Math.exp(logWeight(k) - offset);
+            total += weights[k];
+            peak = Math.max(peak, weights[k]);
+            int i = k + 1;
+            tree[i] += weights[k];
+            int j = i + (i & -i);
+            if (j <= n) {
+                tree[j] += tree[i];
+            }
+        }
+        updates = 0;
+    }
+
+    @Override
+    public void set(int k, double ll) {
+        if (Double.isNaN(ll)) {
+            throw new IllegalArgumentException();
+        }
+        lls[k] = ll;
+        double x = logWeight(k);
+        if (++updates > n || x - offset > MAX_SHIFT) {
+            rebuild();
+            return;
+        }
+        double w = Math.exp(x - offset);
+        double delta = w - weights[k];
+        weights[k] = w;
+        for (int i = k + 1; i <= n; i += i & -i) {
+            tree[i] += delta;
+        }
+        total += delta;
+        peak = Math.max(peak, w);
+        if (total < peak * PRECISION) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public double get(int k) {
+        return lls[k];
+    }
+
+    @Override
+    public double likelihood() {
+        return total > 0 ? offset + Math.log(total) : Double.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    public int randomChoice(SplittableRandom re) {
+        if (n == 0 || total <= 0) {
+            return 0;
+        }
+        double target = re.nextDouble() * total;
+        int pos = 0;
+        for (int step = Integer.highestOneBit(n); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= n && tree[next] <= target) {
+                pos = next;
+                target -= tree[next];
+            }
+        }
+        // rounding may stop the descent at an empty index or past the end
+        if (pos < n && weights[pos] > 0) {
+            return pos;
+        }
+        for (int k = Math.min(pos, n - 1); k >= 0; k--) {
+            if (weights[k] > 0) {
+                return k;
+            }
+        }
+        for (int k = pos + 1; k < n; k++) {
+            if (weights[k] > 0) {
+                return k;
+            }
+        }
+        return 0;
+    }
+}
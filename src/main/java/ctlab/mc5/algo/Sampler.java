@@ -0,0 +1,24 @@
+package ctlab.mc5.algo;
+
+import java.util.SplittableRandom;
+
+/**
+ * Discrete distribution over indices {@code 0..size-1} given by unnormalized log-likelihoods.
+ * The weight of index k is {@code exp(min(beta * ll_k, 0))}, an index with log-likelihood
+ * {@link Double#NEGATIVE_INFINITY} is never chosen.
+ */
+public interface Sampler {
+    /**
+     * @throws IllegalArgumentException if {@code ll} is NaN
+     */
+    void set(int k, double ll);
+
+    double get(int k);
+
+    /**
+     * Logarithm of the total weight.
+     */
+    double likelihood();
+
+    int randomChoice(SplittableRandom re);
+}
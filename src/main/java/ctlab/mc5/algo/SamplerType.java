@@ -0,0 +1,36 @@
+package ctlab.mc5.algo;
+
+/**
+ * Implementations of {@link Sampler}.
+ */
+public enum SamplerType {
+    /**
+     * Binary tree of sums kept in log space, every update and every choice costs O(log n) exponents.
+     */
+    SEGMENT_TREE,
+    /**
+     * Fenwick tree of linear weights relative to the maximum, an update costs a single exponent
+     * and a choice none, weights are renormalized once in a while.
+     */
+    FENWICK,
+    /**
+     * Walker alias table rebuilt lazily after updates, a choice costs O(1). Suits distributions
+     * that are sampled many times between changes.
+     */
+    ALIAS;
+
+    public Sampler create(int size, double beta) {
+        switch (this) {
+            case FENWICK:
+                return new FenwickSampler(size, beta);
+            case ALIAS:
+                return new AliasSampler(size, beta);
+            default:
+                return new SegmentTree(size, beta);
+        }
+    }
+
+    public Sampler create(int size) {
+        return create(size, 1.0);
+    }
+}
@@ -3,7 +3,7 @@ package ctlab.mc5.algo;
 import java.util.Arrays;
 import java.util.SplittableRandom;
 
-public class SegmentTree {
+public class SegmentTree implements Sampler {
     private double[] lls;
     private double[] sum;
     private int n;
@@ -38,6 +38,31 @@ public class SegmentTree {
         return k >= sum.length ? Math.min(beta * lls[k], 0.0) : sum[k];
     }
 
+    private static double nanSafe(float x) {
+        return Float.isNaN(x) ? 0 : x;
+    }
+
+    // weights of the left subtree, the right subtree and the node itself are computed in place
+    // instead of a temporary object, set and randomChoice are on the hot path of every step
+
+    private double maxLL(int k) {
+        double ll = Math.min(beta * lls[k], 0.0);
+        return Math.max(ll, Math.max(get_sum(child(k)), get_sum(child(k) + 1)));
+    }
+
+    private double leftWeight(int k, double maxLL) {
+        return nanSafe((float) Math.exp(get_sum(child(k)) - maxLL));
+    }
+
+    private double rightWeight(int k, double maxLL) {
+        return nanSafe((float) Math.exp(get_sum(child(k) + 1) - maxLL));
+    }
+
+    private double currentWeight(int k, double maxLL) {
+        return nanSafe((float) Math.exp(Math.min(beta * lls[k], 0.0) - maxLL));
+    }
+
+    @Override
     public void set(int k, double ll) {
         if (Double.isNaN(ll)) {
             throw new IllegalArgumentException();
@@ -47,8 +72,9 @@ public class SegmentTree {
             k = parent(k);
         }
         while (true) {
-            Distribution d = new Distribution(k);
-            sum[k] = d.maxLL + Math.log(d.sum);
+            double maxLL = maxLL(k);
+            double total = leftWeight(k, maxLL) + rightWeight(k, maxLL) + currentWeight(k, maxLL);
+            sum[k] = maxLL + Math.log(total);
             if (k == 0) {
                 break;
             }
@@ -56,53 +82,37 @@ public class SegmentTree {
         }
     }
 
+    @Override
     public double get(int k) {
         return lls[k];
     }
 
+    @Override
     public double likelihood() {
         return get_sum(0);
     }
 
+    @Override
     public int randomChoice(SplittableRandom re) {
         int k = 0;
         while (true) {
             if (k > n) {
                 return parent(k);
             }
-            Distribution d = new Distribution(k);
+            double maxLL = maxLL(k);
+            double left = leftWeight(k, maxLL);
+            double right = rightWeight(k, maxLL);
+            double total = left + right + currentWeight(k, maxLL);
+            left /= total;
+            right /= total;
             double rv = re.nextDouble();
-            double leftThreshold = d.left;
-            double rightThreshold = d.left + d.right;
-            if (rv < leftThreshold) {
+            if (rv < left) {
                 k = child(k);
-            } else if (rv < rightThreshold) {
+            } else if (rv < left + right) {
                 k = child(k) + 1;
             } else {
                 return k;
             }
         }
     }
-
-    private class Distribution {
-        public double left, right, current, maxLL, sum;
-
-        private double NANSafe(float x) {
-            return Float.isNaN(x) ? 0 : x;
-        }
-
-        public Distribution(int k) {
-            double left_sum = get_sum(child(k));
-            double right_sum = get_sum(child(k) + 1);
-            double ll = Math.min(beta * lls[k], 0.0);
-            maxLL = Math.max(ll, Math.max(left_sum, right_sum));
-            left = NANSafe((float) Math.exp(left_sum - maxLL));
-            right = NANSafe((float) Math.exp(right_sum - maxLL));
-            current = NANSafe((float) Math.exp(ll - maxLL));
-            sum = left + right + current;
-            left /= sum;
-            right /= sum;
-            current /= sum;
-        }
-    }
 }
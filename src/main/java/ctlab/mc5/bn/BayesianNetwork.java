@@ -1,5 +1,6 @@
 package ctlab.mc5.bn;
 
+import ctlab.mc5.bn.sf.ParentPartition;
 import ctlab.mc5.bn.sf.ScoringFunction;
 import ctlab.mc5.graph.Graph;
 import org.apache.commons.math3.util.Pair;
@@ -14,6 +15,10 @@ public class BayesianNetwork {
     private Graph g;
     private ScoringFunction sf;
     private Map<String, Integer> names;
+    // parent sets built on demand, valid while their hash matches the graph
+    private ParentSet[] parentSets;
+    // partitions of observations by the current parents, rebuilt when parents or discretizations change
+    private ParentPartition[] partitions;
 
 
     public BayesianNetwork(List<Variable> variables) {
@@ -22,14 +27,19 @@ public class BayesianNetwork {
 
     public BayesianNetwork(List<Variable> variables, ScoringFunction sf) {
         g = new Graph(variables.size());
+        parentSets = new ParentSet[g.size()];
+        partitions = new ParentPartition[g.size()];
         this.variables = variables;
-        LogFactorial lf = new LogFactorial();
+        int observations = variables.stream().mapToInt(Variable::obsNum).max().orElse(0);
+        // counts never exceed the number of observations plus the cardinality of a variable
+        LogFactorial lf = new LogFactorial(observations + Variable.MAX_CLASSES);
         variables.forEach(v -> v.setLF(lf));
         names = new HashMap<>();
         for (int i = 0; i < variables.size(); i++) {
             names.put(this.variables.get(i).getName(), i);
         }
         this.sf = sf;
+        sf.setLogFactorial(lf);
         sf.init(g.size());
     }
 
@@ -55,6 +65,8 @@ public class BayesianNetwork {
             variables.add(new Variable(v));
         }
         g = new Graph(bn.g);
+        parentSets = bn.parentSets.clone();
+        partitions = new ParentPartition[g.size()];
         names = new HashMap<>(bn.names);
         sf = bn.sf.cp();
     }
@@ -100,23 +112,59 @@ public class BayesianNetwork {
         return variables.get(v);
     }
 
+    /**
+     * Current parent set of a node. It is rebuilt only after the parents have changed,
+     * so repeated calls between moves neither allocate nor sort.
+     */
+    public ParentSet parents(int to) {
+        ParentSet ps = parentSets[to];
+        if (ps == null || ps.hash64() != g.parentHash(to) || ps.size() != g.inDegree(to)) {
+            ps = ParentSet.of(ingoingEdges(to));
+            parentSets[to] = ps;
+        }
+        return ps;
+    }
+
+    /**
+     * 64-bit hash of the parent set of a node, maintained on every edge change.
+     */
+    public long parentHash(int to) {
+        return g.parentHash(to);
+    }
+
     public double score(int to) {
-        return sf.score(var(to), parentSet(to), variables.size());
+        return sf.score(var(to), parents(to), variables);
+    }
+
+    /**
+     * Partition of observations by the current parents of a node, shared by all scores of neighbouring families.
+     */
+    public ParentPartition partition(int to) {
+        ParentSet parents = parents(to);
+        ParentPartition partition = partitions[to];
+        if (partition == null || !partition.isCurrent(parents)) {
+            partition = new ParentPartition(var(to), parents, variables);
+            partitions[to] = partition;
+        }
+        return partition;
     }
 
     public double scoreIncluding(int from, int to) {
-        List<Variable> parents = parentSet(to);
-        assert !parents.contains(var(from));
-
-        parents.add(var(from));
-        return sf.score(var(to), parents, variables.size());
+        assert !parents(to).contains(from);
+        return sf.scoreToggled(partition(to), from);
     }
 
     public double scoreExcluding(int from, int to) {
-        List<Variable> parents = parentSet(to);
-        assert parents.contains(var(from));
-        parents.remove(var(from));
-        return sf.score(var(to), parents, variables.size());
+        assert parents(to).contains(from);
+        return sf.scoreToggled(partition(to), from);
+    }
+
+    /**
+     * Scores of {@code to} after toggling each of the edges {@code froms[i] -> to}, {@code i < count}, see
+     * {@link ScoringFunction#scoreCandidates}.
+     */
+    public void scoreCandidates(int to, int[] froms, int count, double[] scores) {
+        sf.scoreCandidates(partition(to), froms, count, scores);
     }
 
     public void clearEdges() {
@@ -0,0 +1,64 @@
+package ctlab.mc5.bn;
+
+import java.util.Arrays;
+
+/**
+ * Assigns consecutive ids to keys in order of their first appearance.
+ * Small key spaces are indexed directly, larger ones go through an open-addressing table.
+ * Stamps make {@link #reset} O(1), so a mapper is reused without clearing or allocation.
+ */
+final class ClassMapper {
+    static final int DIRECT_LIMIT = 1 << 12;
+
+    private long[] keys = new long[0];
+    private int[] ids = new int[0];
+    private int[] stamps = new int[0];
+    private int stamp;
+    private int mask;
+    private boolean direct;
+    private int count;
+
+    /**
+     * @param keySpace upper bound (exclusive) for keys or a non-positive value if unknown
+     * @param expected maximum number of distinct keys
+     */
+    void reset(long keySpace, int expected) {
+        direct = keySpace > 0 && keySpace <= DIRECT_LIMIT;
+        int capacity = direct ? (int) keySpace : Integer.highestOneBit(Math.max(2, expected) * 4 - 1);
+        if (stamps.length < capacity) {
+            keys = new long[capacity];
+            ids = new int[capacity];
+            stamps = new int[capacity];
+            stamp = 0;
+        }
+        mask = Integer.highestOneBit(stamps.length) - 1;
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        count = 0;
+    }
+
+    int map(long key) {
+        int pos;
+        if (direct) {
+            pos = (int) key;
+        } else {
+            long h = key * 0x9E3779B97F4A7C15L;
+            pos = (int) (h ^ (h >>> 32)) & mask;
+            while (stamps[pos] == stamp && keys[pos] != key) {
+                pos = (pos + 1) & mask;
+            }
+        }
+        if (stamps[pos] != stamp) {
+            stamps[pos] = stamp;
+            keys[pos] = key;
+            ids[pos] = count++;
+        }
+        return ids[pos];
+    }
+
+    int count() {
+        return count;
+    }
+}
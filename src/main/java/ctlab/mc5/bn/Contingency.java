@@ -0,0 +1,44 @@
+package ctlab.mc5.bn;
+
+/**
+ * Class of every observation with respect to a parent set (parent classes)
+ * and to the parent set together with the child (all classes).
+ * Instances are per thread scratch space reused by {@link Variable#mapObs}.
+ */
+public final class Contingency {
+    private int[] parentCls = new int[0];
+    private int[] allCls = new int[0];
+    private int parentClsCount;
+    private int allClsCount;
+
+    final ClassMapper parentMapper = new ClassMapper();
+    final ClassMapper allMapper = new ClassMapper();
+
+    void ensureSize(int m) {
+        if (parentCls.length != m) {
+            parentCls = new int[m];
+            allCls = new int[m];
+        }
+    }
+
+    void setCounts(int parentClsCount, int allClsCount) {
+        this.parentClsCount = parentClsCount;
+        this.allClsCount = allClsCount;
+    }
+
+    public int[] parentClasses() {
+        return parentCls;
+    }
+
+    public int[] allClasses() {
+        return allCls;
+    }
+
+    public int parentClassCount() {
+        return parentClsCount;
+    }
+
+    public int allClassCount() {
+        return allClsCount;
+    }
+}
@@ -0,0 +1,195 @@
+package ctlab.mc5.bn;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable expression values of a single gene together with their sort order.
+ * One instance is shared by all copies of a {@link Variable}. The data may live outside the heap,
+ * e.g. in a memory mapped cache, and is copied to the heap only when the column is serialized.
+ */
+public final class ExpressionColumn implements Serializable {
+    private transient DoubleBuffer values;
+    private transient IntBuffer orderedObs;
+    private transient IntBuffer uniq;
+    private transient double[] uniqValues;
+
+    public ExpressionColumn(List<Double> values) {
+        this(values.stream().mapToDouble(Double::doubleValue).toArray());
+    }
+
+    public ExpressionColumn(double[] values) {
+        this(values, sortedOrder(values));
+    }
+
+    ExpressionColumn(double[] values, int[] orderedObs) {
+        this(values, orderedObs, uniqBoundaries(values, orderedObs));
+    }
+
+    public ExpressionColumn(double[] values, int[] orderedObs, int[] uniq) {
+        this(DoubleBuffer.wrap(values), IntBuffer.wrap(orderedObs), IntBuffer.wrap(uniq));
+    }
+
+    /**
+     * Restores a column from precomputed sort order and distinct value boundaries, e.g. from a cache.
+     * The buffers are used from their current positions up to their limits, their content is taken as is,
+     * not copied and not checked beyond the lengths.
+     */
+    public ExpressionColumn(DoubleBuffer values, IntBuffer orderedObs, IntBuffer uniq) {
+        init(values.slice(), orderedObs.slice(), uniq.slice());
+    }
+
+    private void init(DoubleBuffer values, IntBuffer orderedObs, IntBuffer uniq) {
+        int m = values.limit();
+        if (orderedObs.limit() != m || uniq.limit() == 0 || uniq.limit() > Math.max(m, 1)) {
+            throw new IllegalArgumentException("Inconsistent column layout");
+        }
+        this.values = values;
+        this.orderedObs = orderedObs;
+        this.uniq = uniq;
+        uniqValues = new double[uniq.limit()];
+        for (int i = 0; i < uniqValues.length; i++) {
+            uniqValues[i] = m > 0 ? values.get(orderedObs.get(uniq.get(i))) : Double.NaN;
+        }
+    }
+
+    public int size() {
+        return values.limit();
+    }
+
+    public double value(int obs) {
+        return values.get(obs);
+    }
+
+    /**
+     * Number of distinct values.
+     */
+    public int uniqCount() {
+        return uniqValues.length;
+    }
+
+    /**
+     * Observation holding the i-th distinct value.
+     */
+    public int uniqObs(int i) {
+        return orderedObs.get(uniq.get(i));
+    }
+
+    /**
+     * The i-th distinct value in ascending order.
+     */
+    public double uniqValue(int i) {
+        return uniqValues[i];
+    }
+
+    /**
+     * Observation at the i-th position of the ascending order.
+     */
+    public int orderedObs(int i) {
+        return orderedObs.get(i);
+    }
+
+    /**
+     * Last position in the ascending order holding the i-th distinct value.
+     */
+    public int uniqEnd(int i) {
+        return uniq.get(i);
+    }
+
+    int[] orderedObs() {
+        int[] res = new int[size()];
+        orderedObs.duplicate().get(res);
+        return res;
+    }
+
+    private static double[] toArray(DoubleBuffer buffer) {
+        double[] res = new double[buffer.limit()];
+        buffer.duplicate().get(res);
+        return res;
+    }
+
+    private static int[] toArray(IntBuffer buffer) {
+        int[] res = new int[buffer.limit()];
+        buffer.duplicate().get(res);
+        return res;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(toArray(values));
+        out.writeObject(toArray(orderedObs));
+        out.writeObject(toArray(uniq));
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        double[] values = (double[]) in.readObject();
+        int[] orderedObs = (int[]) in.readObject();
+        int[] uniq = (int[]) in.readObject();
+        init(DoubleBuffer.wrap(values), IntBuffer.wrap(orderedObs), IntBuffer.wrap(uniq));
+    }
+
+    /**
+     * Stable ascending order of observations, equivalent to sorting the indices with {@link Double#compare}.
+     */
+    static int[] sortedOrder(double[] values) {
+        int n = values.length;
+        int[] order = new int[n];
+        int[] buffer = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo;
+                int j = mid;
+                int k = lo;
+                while (i < mid && j < hi) {
+                    if (Double.compare(values[order[j]], values[order[i]]) < 0) {
+                        buffer[k++] = order[j++];
+                    } else {
+                        buffer[k++] = order[i++];
+                    }
+                }
+                while (i < mid) {
+                    buffer[k++] = order[i++];
+                }
+                while (j < hi) {
+                    buffer[k++] = order[j++];
+                }
+            }
+            int[] tmp = order;
+            order = buffer;
+            buffer = tmp;
+        }
+        return order;
+    }
+
+    /**
+     * Positions in the sort order where runs of equal values end.
+     */
+    static int[] uniqBoundaries(double[] values, int[] orderedObs) {
+        int[] uniq = new int[Math.max(values.length, 1)];
+        int size = 0;
+        if (values.length > 0) {
+            double last = values[orderedObs[0]];
+            for (int i = 1; i < orderedObs.length; i++) {
+                double curr = values[orderedObs[i]];
+                if (curr != last) {
+                    uniq[size++] = i - 1;
+                    last = curr;
+                }
+            }
+        }
+        uniq[size++] = values.length - 1;
+        return Arrays.copyOf(uniq, size);
+    }
+}
@@ -1,25 +1,48 @@
 package ctlab.mc5.bn;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+/**
+ * Table of {@code log(n!)}. Reads are a single array load; the table grows by copying
+ * and publishing a new array, so readers never observe a partially filled one.
+ */
 public class LogFactorial implements Serializable {
-    private final List<Double> values;
+    private volatile double[] values;
 
     public LogFactorial() {
-        values = new ArrayList<>();
-        values.add(0.0);
+        this(0);
+    }
+
+    public LogFactorial(int n) {
+        values = fill(new double[]{0.0}, n);
     }
 
     public double value(int n) {
-        if (n >= values.size()) {
-            synchronized (values) {
-                for (int i = values.size(); i <= n; i++) {
-                    values.add(values.get(i - 1) + Math.log(i));
-                }
-            }
+        double[] v = values;
+        if (n >= v.length) {
+            v = grow(n);
+        }
+        return v[n];
+    }
+
+    private synchronized double[] grow(int n) {
+        double[] v = values;
+        if (n >= v.length) {
+            v = fill(v, Math.max(n, 2 * v.length));
+            values = v;
+        }
+        return v;
+    }
+
+    private static double[] fill(double[] old, int n) {
+        if (n < old.length) {
+            return old;
+        }
+        double[] v = Arrays.copyOf(old, n + 1);
+        for (int i = old.length; i <= n; i++) {
+            v[i] = v[i - 1] + Math.log(i);
         }
-        return values.get(n);
+        return v;
     }
 }
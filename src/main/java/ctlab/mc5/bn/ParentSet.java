@@ -0,0 +1,143 @@
+package ctlab.mc5.bn;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable canonical parent set: node numbers in ascending order packed into a {@code short[]}
+ * (read as unsigned) with a precomputed 64-bit hash. The hash is the XOR of {@link #zobrist}
+ * of the members, so it can be updated in O(1) when a single node is added or removed.
+ */
+public final class ParentSet implements Serializable {
+    public static final int MAX_NODE = 0xFFFF;
+    public static final ParentSet EMPTY = new ParentSet(new short[0], 0);
+
+    private final short[] nodes;
+    private final long hash;
+
+    private ParentSet(short[] nodes, long hash) {
+        this.nodes = nodes;
+        this.hash = hash;
+    }
+
+    public static ParentSet of(int... nodes) {
+        int[] sorted = nodes.clone();
+        Arrays.sort(sorted);
+        short[] packed = new short[sorted.length];
+        long hash = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            int node = check(sorted[i]);
+            if (i > 0 && sorted[i - 1] == node) {
+                throw new IllegalArgumentException("Duplicate parent: " + node);
+            }
+            packed[i] = (short) node;
+            hash ^= zobrist(node);
+        }
+        return new ParentSet(packed, hash);
+    }
+
+    public static ParentSet of(List<Integer> nodes) {
+        return of(nodes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static int check(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node number out of range: " + node);
+        }
+        return node;
+    }
+
+    /**
+     * Hash contribution of a single node.
+     */
+    public static long zobrist(int node) {
+        long h = (node + 1) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xd6e8feb86659fd93L;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * The i-th smallest node of the set.
+     */
+    public int get(int i) {
+        return nodes[i] & 0xFFFF;
+    }
+
+    private int indexOf(int node) {
+        int lo = 0;
+        int hi = nodes.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = nodes[mid] & 0xFFFF;
+            if (value < node) {
+                lo = mid + 1;
+            } else if (value > node) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    public boolean contains(int node) {
+        return indexOf(node) >= 0;
+    }
+
+    public ParentSet with(int node) {
+        int pos = indexOf(check(node));
+        if (pos >= 0) {
+            throw new IllegalArgumentException("Duplicate parent: " + node);
+        }
+        pos = -(pos + 1);
+        short[] res = new short[nodes.length + 1];
+        System.arraycopy(nodes, 0, res, 0, pos);
+        res[pos] = (short) node;
+        System.arraycopy(nodes, pos, res, pos + 1, nodes.length - pos);
+        return new ParentSet(res, hash ^ zobrist(node));
+    }
+
+    public ParentSet without(int node) {
+        int pos = indexOf(node);
+        if (pos < 0) {
+            throw new IllegalArgumentException("Not a parent: " + node);
+        }
+        short[] res = new short[nodes.length - 1];
+        System.arraycopy(nodes, 0, res, 0, pos);
+        System.arraycopy(nodes, pos + 1, res, pos, nodes.length - pos - 1);
+        return new ParentSet(res, hash ^ zobrist(node));
+    }
+
+    public long hash64() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ParentSet)) return false;
+        ParentSet other = (ParentSet) o;
+        return hash == other.hash && Arrays.equals(nodes, other.nodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < nodes.length; i++) {
+            s.append(i == 0 ? "" : ", ").append(get(i));
+        }
+        return s.append(']').toString();
+    }
+}
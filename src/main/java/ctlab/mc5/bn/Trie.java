@@ -10,6 +10,10 @@ public class Trie {
         root = new Node(0);
     }
 
+    public int size() {
+        return n;
+    }
+
     public Selector selector() {
         return new Selector(root);
     }
@@ -1,8 +1,5 @@
 package ctlab.mc5.bn;
 
-
-import org.apache.commons.math3.util.Pair;
-
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
@@ -12,13 +9,16 @@ import java.util.stream.IntStream;
 public class Variable implements Comparable<Variable>, Serializable {
     private String name;
 
-    private List<Double> data;
-    private double[] u_x;
-    private int[] uniq;
-    private int[] orderedObs;
-    private double[] logPrecomputed;
-    private int[] discrete;
+    public static final int MAX_CLASSES = 256;
+
+    private final ExpressionColumn column;
+    // value - 1 of every observation, read as unsigned
+    private byte[] discrete;
+    // per class bitsets of observations, built on demand
+    private long[][] indicators;
     private List<Double> edges;
+    // fingerprint of the discretization, equal for equal edges
+    private long discretizationVersion;
     private LogFactorial lf;
     private int defaultDiscClasses;
     private Random random;
@@ -28,24 +28,17 @@ public class Variable implements Comparable<Variable>, Serializable {
     private int maxLog;
 
     private final int number;
-    private int [] result1;
-    private int [] result2;
-    private Map<Long, Integer> mapa1;
-    private Map<Long, Integer> mapa2;
+
+    private static final ThreadLocal<Contingency> CONTINGENCY = ThreadLocal.withInitial(Contingency::new);
 
     private void updateMaxLog() {
         maxLog = (int) Math.floor(Math.log(Long.MAX_VALUE) / Math.log(ub));
     }
 
-    private void loadCaches() {
-        int m = obsNum();
-        result1 = new int[m];
-        result2 = new int[m];
-        mapa1 = new HashMap<>(2 * m);
-        mapa2 = new HashMap<>(2 * m);
-    }
-
     public void setDiscLimits(int lb, int ub) {
+        if (ub > MAX_CLASSES) {
+            throw new IllegalArgumentException("Too many classes");
+        }
         this.lb = lb;
         this.ub = ub;
         updateMaxLog();
@@ -59,60 +52,30 @@ public class Variable implements Comparable<Variable>, Serializable {
     }
 
     public Variable(String name, List<Double> data, int discClasses, int number) {
+        this(name, new ExpressionColumn(data), discClasses, number);
+    }
+
+    public Variable(String name, ExpressionColumn column, int discClasses, int number) {
         this.number = number;
         random = ThreadLocalRandom.current();
         this.name = stripName(name);
-        this.data = new ArrayList<>(data);
+        this.column = column;
         lf = new LogFactorial();
 
-        orderedObs = IntStream.range(0, data.size()).toArray();
-
-        Comparator<Integer> cmp = Comparator.comparingDouble(data::get);
-
-        orderedObs = Arrays.stream(orderedObs)
-                .boxed()
-                .sorted(cmp)
-                .mapToInt(Integer::intValue)
-                .toArray();
-
-        List<Integer> uniq = new ArrayList<>();
-        if (data.size() > 0) {
-            double last = data.get(orderedObs[0]);
-            for (int i = 1; i < orderedObs.length; i++) {
-                double curr = data.get(orderedObs[i]);
-                if (curr != last) {
-                    uniq.add(i - 1);
-                    last = curr;
-                }
-            }
-        }
-        uniq.add(data.size() - 1);
-        this.uniq = uniq.stream().mapToInt(Integer::intValue).toArray();
-        u_x = new double[uniq.size()];
-        for (int i = 0; i < uniq.size(); i++) {
-            u_x[i] = data.get(getUniq(i));
-        }
-
-        logPrecomputed = IntStream.range(0, data.size() * 2 + 1)
-                .mapToDouble(Math::log)
-                .toArray();
-
         this.defaultDiscClasses = discClasses;
         initial(discClasses);
-        ub = obsNum();
+        // discrete values are stored in bytes, so unlike the unbounded obsNum() used before,
+        // random policies of variables with more than MAX_CLASSES observations stop at MAX_CLASSES classes
+        ub = Math.min(obsNum(), MAX_CLASSES);
         lb = 1;
         updateMaxLog();
-        loadCaches();
     }
 
     Variable(Variable v) {
-        data = new ArrayList<>(v.data);
-        u_x = Arrays.copyOf(v.u_x, v.u_x.length);
-        uniq = Arrays.copyOf(v.uniq, v.uniq.length);
-        orderedObs = Arrays.copyOf(v.orderedObs, v.orderedObs.length);
-        logPrecomputed = v.logPrecomputed;
+        column = v.column;
         discrete = Arrays.copyOf(v.discrete, v.discrete.length);
         edges = new ArrayList<>(v.edges);
+        discretizationVersion = v.discretizationVersion;
         lf = new LogFactorial();
         this.name = v.name;
         defaultDiscClasses = v.defaultDiscClasses;
@@ -121,7 +84,6 @@ public class Variable implements Comparable<Variable>, Serializable {
         random = ThreadLocalRandom.current();
         number = v.number;
         updateMaxLog();
-        loadCaches();
     }
 
     void setLF(LogFactorial lf) {
@@ -130,7 +92,7 @@ public class Variable implements Comparable<Variable>, Serializable {
 
     private double getDiscEdge(int u) {
         double discEdge;
-        if (u + 1 < uniq.length) {
+        if (u + 1 < column.uniqCount()) {
             discEdge = (getU(u) + getU(u + 1)) / 2.0;
         } else {
             discEdge = Double.POSITIVE_INFINITY;
@@ -139,24 +101,64 @@ public class Variable implements Comparable<Variable>, Serializable {
     }
 
     private void writeDiscretization() {
-        discrete = data.stream().mapToInt(x -> -Collections.binarySearch(edges, x)).toArray();
+        if (cardinality() > MAX_CLASSES) {
+            throw new IllegalArgumentException("Too many classes");
+        }
+        int m = obsNum();
+        if (discrete == null || discrete.length != m) {
+            discrete = new byte[m];
+        }
+        double[] bounds = edges.stream().mapToDouble(Double::doubleValue).toArray();
+        for (int i = 0; i < m; i++) {
+            double x = column.value(i);
+            int lo = 0;
+            int hi = bounds.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (bounds[mid] < x) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            discrete[i] = (byte) lo;
+        }
+        indicators = null;
+        long version = bounds.length;
+        for (double bound : bounds) {
+            version = mix(version * 31 + Double.doubleToLongBits(bound));
+        }
+        discretizationVersion = version;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Identifies the current discretization: variables with equal versions have equal discrete values.
+     */
+    public long discretizationVersion() {
+        return discretizationVersion;
     }
 
     public Collection<Integer> cardinalities() {
         Map<Integer, Integer> cs = new TreeMap<>();
-        for (int d : discrete) {
+        for (int i = 0; i < discrete.length; i++) {
+            int d = discreteValue(i);
             cs.putIfAbsent(d, 0);
             cs.put(d, cs.get(d) + 1);
         }
         return cs.values();
     }
 
-    private int getUniq(int i) {
-        return orderedObs[uniq[i]];
-    }
-
     private double getU(int i) {
-        return u_x[i];
+        return column.uniqValue(i);
     }
 
     private int numberOfClasses(int[] obs) {
@@ -164,8 +166,27 @@ public class Variable implements Comparable<Variable>, Serializable {
                 .max().getAsInt() + 1;
     }
 
-    public Pair<int[], int[]> mapObs(List<Variable> ps) {
+    private static long keySpace(int base, int digits) {
+        long space = 1;
+        for (int i = 0; i < digits; i++) {
+            space *= base;
+            if (space > ClassMapper.DIRECT_LIMIT) {
+                return -1;
+            }
+        }
+        return space;
+    }
+
+    /**
+     * Maps observations to classes of the parent set and of the parent set with this variable.
+     * The result is per thread scratch space, valid until the next call on the same thread.
+     */
+    public Contingency mapObs(List<Variable> ps) {
         int m = obsNum();
+        Contingency result = CONTINGENCY.get();
+        result.ensureSize(m);
+        int[] result1 = result.parentClasses();
+        int[] result2 = result.allClasses();
 
         if (ps.size() + 1 > maxLog) {
             int ps_size = ps.size();
@@ -190,48 +211,40 @@ public class Variable implements Comparable<Variable>, Serializable {
                 selector1.reuse();
                 selector2.reuse();
                 for (Variable p : ps) {
-                    selector1.choose(p.discreteValue(orderedObs[i]) - 1);
-                    selector2.choose(p.discreteValue(orderedObs[i]) - 1);
+                    selector1.choose(p.discreteValue(i) - 1);
+                    selector2.choose(p.discreteValue(i) - 1);
                 }
 
-                selector2.choose(this.discreteValue(orderedObs[i]) - 1);
+                selector2.choose(this.discreteValue(i) - 1);
                 result1[i] = selector1.get();
                 result2[i] = selector2.get();
             }
-            return new Pair<>(result1, result2);
+            result.setCounts(t1.size(), t2.size());
+            return result;
         }
-        
-        mapa1.clear();
-        mapa2.clear();
 
-        int n1 = 0;
-        int n2 = 0;
+        ClassMapper mapper1 = result.parentMapper;
+        ClassMapper mapper2 = result.allMapper;
+        mapper1.reset(keySpace(ub, ps.size()), m);
+        mapper2.reset(keySpace(ub, ps.size() + 1), m);
+
+        int ps_size = ps.size();
         for (int i = 0; i < m; i++) {
             long val1 = 0;
-            for (Variable p : ps) {
-                val1 = val1 * ub + (p.discreteValue(orderedObs[i]) - 1);
+            for (int j = 0; j < ps_size; j++) {
+                val1 = val1 * ub + (ps.get(j).discreteValue(i) - 1);
             }
 
-            long val2 = val1 * ub + (this.discreteValue(orderedObs[i]) - 1);
-            int res1;
-            if (mapa1.containsKey(val1)) {
-                res1 = mapa1.get(val1);
-            } else {
-                res1 = n1++;
-                mapa1.put(val1, res1);
-            }
-
-            int res2;
-            if (mapa2.containsKey(val2)) {
-                res2 = mapa2.get(val2);
-            } else {
-                res2 = n2++;
-                mapa2.put(val2, res2);
-            }
-            result1[i] = res1;
-            result2[i] = res2;
+            long val2 = val1 * ub + (this.discreteValue(i) - 1);
+            result1[i] = mapper1.map(val1);
+            result2[i] = mapper2.map(val2);
         }
-        return new Pair<>(result1, result2);
+        result.setCounts(mapper1.count(), mapper2.count());
+        return result;
+    }
+
+    public ExpressionColumn column() {
+        return column;
     }
 
     public String getName() {
@@ -239,7 +252,7 @@ public class Variable implements Comparable<Variable>, Serializable {
     }
 
     public int obsNum() {
-        return data.size();
+        return column.size();
     }
 
     public int getNumber() {
@@ -248,13 +261,13 @@ public class Variable implements Comparable<Variable>, Serializable {
 
     void initial(int num_classes) {
         int num_edges = num_classes - 1;
-        if (num_classes > uniq.length) {
+        if (num_classes > column.uniqCount()) {
             throw new IllegalArgumentException("Too many classes");
         }
         edges = new ArrayList<>();
         for (int i = 0; i < num_edges; i++) {
-            int pos = (int) Math.round(Math.floor(uniq.length * ((double) i + 1) / num_classes));
-            edges.add((data.get(getUniq(pos)) + data.get(getUniq(pos + 1))) / 2);
+            int pos = (int) Math.round(Math.floor(column.uniqCount() * ((double) i + 1) / num_classes));
+            edges.add((column.uniqValue(pos) + column.uniqValue(pos + 1)) / 2);
         }
         writeDiscretization();
     }
@@ -268,7 +281,33 @@ public class Variable implements Comparable<Variable>, Serializable {
     }
 
     public int discreteValue(int obs) {
-        return discrete[obs];
+        return (discrete[obs] & 0xFF) + 1;
+    }
+
+    /**
+     * Appends the discrete value of every observation as the next mixed-radix digit:
+     * {@code keys[obs] = keys[obs] * radix + discreteValue(obs) - 1}.
+     */
+    public void accumulateKeys(int[] keys, int radix) {
+        byte[] d = discrete;
+        for (int i = 0; i < d.length; i++) {
+            keys[i] = keys[i] * radix + (d[i] & 0xFF);
+        }
+    }
+
+    /**
+     * Bitset of observations having the given discrete value, 64 observations per word.
+     * The returned array is shared and must not be modified.
+     */
+    public long[] classIndicator(int value) {
+        if (indicators == null) {
+            int m = obsNum();
+            indicators = new long[cardinality()][(m + 63) >>> 6];
+            for (int i = 0; i < m; i++) {
+                indicators[discrete[i] & 0xFF][i >>> 6] |= 1L << i;
+            }
+        }
+        return indicators[value - 1];
     }
 
     public List<Double> discretizationEdges() {
@@ -276,7 +315,7 @@ public class Variable implements Comparable<Variable>, Serializable {
     }
 
     public void randomPolicy() {
-        double[] edges = IntStream.range(0, uniq.length - 1).mapToDouble(this::getDiscEdge).toArray();
+        double[] edges = IntStream.range(0, column.uniqCount() - 1).mapToDouble(this::getDiscEdge).toArray();
         int k = random.nextInt(ub - lb + 1) + lb - 1;
         List<Integer> idx = IntStream.range(0, edges.length).boxed().collect(Collectors.toList());
         Collections.shuffle(idx, random);
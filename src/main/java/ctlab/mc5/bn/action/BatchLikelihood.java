@@ -0,0 +1,11 @@
+package ctlab.mc5.bn.action;
+
+/**
+ * Log-likelihoods of a range of actions computed together.
+ */
+public interface BatchLikelihood {
+    /**
+     * Stores the log-likelihood of action {@code from + i} to {@code out[i]} for {@code 0 <= i < count}.
+     */
+    void compute(int from, int count, double[] out);
+}
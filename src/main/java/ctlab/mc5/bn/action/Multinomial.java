@@ -1,12 +1,13 @@
 package ctlab.mc5.bn.action;
 
-import ctlab.mc5.algo.SegmentTree;
+import ctlab.mc5.algo.Sampler;
+import ctlab.mc5.algo.SamplerType;
 import ctlab.mc5.bn.BayesianNetwork;
 import ctlab.mc5.bn.Variable;
 
 import javax.xml.validation.Validator;
 import java.util.*;
-import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 
 public class Multinomial {
     public static final double EPS = 1e-8;
@@ -18,19 +19,22 @@ public class Multinomial {
     private int hits;
     private final double initialLL;
     private boolean initialized;
-    private final double beta;
+    private double beta;
 
     private double lastLL;
 
-    private final Function<Integer, Double> computeLL;
+    private final IntToDoubleFunction computeLL;
+    private final BatchLikelihood batchLL;
     private final SplittableRandom re;
+    private final SamplerType samplerType;
 
-    private SegmentTree actions;
+    private Sampler actions;
     private Cache cache;
 
     private short[] batchHits;
     private float[] batchMaxLL;
     private BitSet batchResolved;
+    private double[] scratch = new double[0];
 
     private HashMap<Short, Double> disabledActions;
 
@@ -125,8 +129,24 @@ public class Multinomial {
         return Math.log(Math.exp(ll1) - Math.exp(ll2)) + maxLL;
     }
 
-    public Multinomial(int maxSize, int batchSize, double beta, int mainCacheSize, Function<Integer, Double> computeLL,
+    public Multinomial(int maxSize, int batchSize, double beta, int mainCacheSize, IntToDoubleFunction computeLL,
                        double initialLL, SplittableRandom re) {
+        this(maxSize, batchSize, beta, mainCacheSize, computeLL, null, initialLL, re);
+    }
+
+    /**
+     * @param batchLL computes log-likelihoods of whole batches at once, {@code computeLL} is used per action if null
+     */
+    public Multinomial(int maxSize, int batchSize, double beta, int mainCacheSize, IntToDoubleFunction computeLL,
+                       BatchLikelihood batchLL, double initialLL, SplittableRandom re) {
+        this(maxSize, batchSize, beta, mainCacheSize, computeLL, batchLL, initialLL, re, SamplerType.SEGMENT_TREE);
+    }
+
+    /**
+     * @param samplerType how batches and the cache node are sampled once the distribution is initialized
+     */
+    public Multinomial(int maxSize, int batchSize, double beta, int mainCacheSize, IntToDoubleFunction computeLL,
+                       BatchLikelihood batchLL, double initialLL, SplittableRandom re, SamplerType samplerType) {
         n = maxSize;
         this.beta = beta;
         this.mainCacheSize = (short) mainCacheSize;
@@ -136,11 +156,30 @@ public class Multinomial {
             ++batchesNum;
         }
         this.computeLL = computeLL;
+        this.batchLL = batchLL;
         this.initialLL = initialLL;
         this.re = re;
+        this.samplerType = samplerType;
         this.disabledActions = new LinkedHashMap<>();
     }
 
+    public double beta() {
+        return beta;
+    }
+
+    /**
+     * Changes the temperature. Weights of the resolved actions depend on it, so the distribution starts over
+     * from its uninitialized state, which computes no likelihoods; disabled actions are kept.
+     */
+    public void setBeta(double beta) {
+        if (beta == this.beta) {
+            return;
+        }
+        this.beta = beta;
+        initialized = false;
+        hits = 0;
+    }
+
     public double logLikelihood() {
         if (!initialized) {
             return Math.log(n - disabledActions.size()) + initialLL;
@@ -154,7 +193,7 @@ public class Multinomial {
     }
 
     private void init() {
-        actions = new SegmentTree(batchesNum + 1);
+        actions = samplerType.create(batchesNum + 1);
         batchResolved = new BitSet(batchesNum);
         cache = new HashTableCache(mainCacheSize, re, beta);
         batchHits = new short[batchesNum];
@@ -175,7 +214,7 @@ public class Multinomial {
     }
 
     private Short tryAction(int pos) {
-        lastLL = computeLL.apply(pos);
+        lastLL = computeLL.applyAsDouble(pos);
         double ll = beta * lastLL;
         if (Math.log(re.nextDouble()) < ll) {
             return (short) pos;
@@ -219,7 +258,7 @@ public class Multinomial {
                 if (cache.contains((short) curr)) {
                     continue;
                 }
-                lastLL = computeLL.apply(curr);
+                lastLL = computeLL.applyAsDouble(curr);
                 double finalLL = Math.min(beta * lastLL, 0.0) + initialLL;
                 double randVal = re.nextDouble();
                 if (Math.log(randVal) < finalLL - batchMaxLL[node]) {
@@ -285,11 +324,28 @@ public class Multinomial {
         return batchLL;
     }
 
+    // the returned array is reused by the next call
+    private double[] computeAll(int from, int count) {
+        if (scratch.length < count) {
+            scratch = new double[Math.max(count, 2 * scratch.length)];
+        }
+        double[] lls = scratch;
+        if (batchLL != null) {
+            batchLL.compute(from, count, lls);
+        } else {
+            for (int i = 0; i < count; i++) {
+                lls[i] = computeLL.applyAsDouble(from + i);
+            }
+        }
+        return lls;
+    }
+
     private void resolveBatch(int b) {
         double batchLL = Double.NEGATIVE_INFINITY;
+        double[] lls = computeAll(batchSize * b, batchSize(b));
         for (int i = 0; i < batchSize(b); i++) {
             short action = (short) (i + batchSize * b);
-            batchLL = likelihoodsSum(batchLL, resolveAction(action, computeLL.apply((int) action)));
+            batchLL = likelihoodsSum(batchLL, resolveAction(action, lls[i]));
         }
         actions.set(b, batchLL);
         batchResolved.set(b, true);
@@ -299,9 +355,10 @@ public class Multinomial {
     public void printDebugInfo(int u) {
         if (!initialized) {
             System.out.println("Structure is not yet initialized");
+            double[] lls = computeAll(0, n);
             for (int i = 0; i < n; i++) {
                 int v = i >= u ? i + 1 : i;
-                double ll = computeLL.apply(i) + initialLL;
+                double ll = lls[i] + initialLL;
                 System.out.println(v + "->" + u + ": " + ll + "(" + Math.exp(ll) + ")");
             }
             return;
@@ -321,7 +378,7 @@ public class Multinomial {
             }
             int b = batch(i);
             System.out.print("batch " + b + (batchResolved.get(b) ? "(resolved)" : "(unresolved)") + " - ");
-            double ll = computeLL.apply(i) + initialLL;
+            double ll = computeLL.applyAsDouble(i) + initialLL;
             System.out.println(ll + "(" + Math.exp(ll) + ")");
         }
     }
@@ -1,12 +1,15 @@
 package ctlab.mc5.bn.action;
 
+import ctlab.mc5.algo.SamplerType;
+
 import java.util.SplittableRandom;
-import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 
 public class MultinomialFactory {
     private final int batchSize;
     private final short mainCacheSize;
     private SplittableRandom re;
+    private SamplerType samplerType = SamplerType.SEGMENT_TREE;
 
     public MultinomialFactory(int batchSize, int mainCacheSize) {
         this.batchSize = batchSize;
@@ -17,7 +20,16 @@ public class MultinomialFactory {
         this.re = re;
     }
 
-    public Multinomial spark(int n, Function<Integer, Double> computeLL, double initialLL, double beta) {
-        return new Multinomial(n, batchSize, beta, mainCacheSize, computeLL, initialLL, re);
+    public void setSamplerType(SamplerType samplerType) {
+        this.samplerType = samplerType;
+    }
+
+    public Multinomial spark(int n, IntToDoubleFunction computeLL, double initialLL, double beta) {
+        return new Multinomial(n, batchSize, beta, mainCacheSize, computeLL, null, initialLL, re, samplerType);
+    }
+
+    public Multinomial spark(int n, IntToDoubleFunction computeLL, BatchLikelihood batchLL,
+                             double initialLL, double beta) {
+        return new Multinomial(n, batchSize, beta, mainCacheSize, computeLL, batchLL, initialLL, re, samplerType);
     }
 }
@@ -1,10 +1,15 @@
 package ctlab.mc5.bn.sf;
 
-import static org.apache.commons.math3.special.Gamma.logGamma;
+import org.apache.commons.math3.special.Gamma;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class BDE extends ScoringFunction {
+    private static final double[] NO_TABLE = new double[0];
+
     private double iss;
+    // shared logGamma tables by divisor, fetched once so that scoring does no map lookups
+    private final AtomicReferenceArray<double[]> tables = new AtomicReferenceArray<>(LogGammaTable.MAX_DIVISOR + 1);
 
     public BDE(double iss) {
         this.iss = iss;
@@ -19,46 +24,56 @@ public class BDE extends ScoringFunction {
         return new BDE(iss);
     }
 
-    double score(int[] parent_cls, int[] all_cls, int cardinality) {
-        int num_cls = 0;
-        int num_all_cls = 0;
-        for (int v: parent_cls) {
-            num_cls = Math.max(num_cls, v);
-        }
-        for (int v: all_cls) {
-            num_all_cls = Math.max(num_all_cls, v);
-        }
-        num_cls += 1;
-        num_all_cls += 1;
-
-        int n = parent_cls.length;
-
-        int[] occ_parent_cls = new int[num_cls];
-        int[] occ_all_cls = new int[num_all_cls];
-
-        for (int i = 0; i < n; i++) {
-            occ_parent_cls[parent_cls[i]]++;
-            occ_all_cls[all_cls[i]]++;
-        }
+    @Override
+    double score(ContingencyTable table, int cardinality) {
+        int num_cls = table.parentClasses();
 
         double value = 0.0;
 
         double iss1 = iss / num_cls;
         double iss2 = iss / (num_cls * cardinality);
 
-        double log_gamma_iss1 = logGamma(iss1);
-        double log_gamma_iss2 = logGamma(iss2);
-
-        for (int i = 0; i < num_all_cls; i++) {
-            value += logGamma(occ_all_cls[i] + iss2);
-            value -= log_gamma_iss2;
-        }
-
-        for (int i = 0; i < num_cls; i++) {
+        double[] log_gamma1 = table(num_cls, table.observations());
+        double[] log_gamma2 = table(num_cls * cardinality, table.observations());
+        double log_gamma_iss1 = logGamma(log_gamma1, iss1, 0);
+        double log_gamma_iss2 = logGamma(log_gamma2, iss2, 0);
+
+        for (int cfg = 0; cfg < table.configurations(); cfg++) {
+            int occ_parent = table.parentCount(cfg);
+            if (occ_parent == 0) {
+                continue;
+            }
+            for (int v = 0; v < cardinality; v++) {
+                int occ_all = table.jointCount(cfg, v);
+                if (occ_all != 0) {
+                    value += logGamma(log_gamma2, iss2, occ_all);
+                    value -= log_gamma_iss2;
+                }
+            }
             value += log_gamma_iss1;
-            value -= logGamma(occ_parent_cls[i] + iss1);
+            value -= logGamma(log_gamma1, iss1, occ_parent);
         }
 
         return value;
     }
+
+    /**
+     * Table of {@code logGamma(k + iss / divisor)} for {@code k <= maxCount} or null if it is not tabulated.
+     * A missing table is not asked for again, the number of observations is the same for all families.
+     */
+    private double[] table(int divisor, int maxCount) {
+        if (divisor > LogGammaTable.MAX_DIVISOR) {
+            return null;
+        }
+        double[] table = tables.get(divisor);
+        if (table == null || (table != NO_TABLE && table.length <= maxCount)) {
+            table = LogGammaTable.of(iss, divisor, maxCount);
+            tables.set(divisor, table == null ? NO_TABLE : table);
+        }
+        return table == NO_TABLE ? null : table;
+    }
+
+    private static double logGamma(double[] table, double alpha, int count) {
+        return table != null ? table[count] : Gamma.logGamma(count + alpha);
+    }
 }
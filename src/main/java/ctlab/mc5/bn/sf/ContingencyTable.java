@@ -0,0 +1,299 @@
+package ctlab.mc5.bn.sf;
+
+import ctlab.mc5.bn.Contingency;
+import ctlab.mc5.bn.ParentSet;
+import ctlab.mc5.bn.Variable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts of parent configurations and of (parent configuration, child value) pairs.
+ * Joint counts are laid out as {@code joint[configuration * cardinality + value]}.
+ * Instances are per thread scratch space, see {@link ScoringFunction#count}.
+ */
+final class ContingencyTable {
+    static final int DENSE_LIMIT = 1 << 12;
+
+    private int[] parent = new int[0];
+    private int[] joint = new int[0];
+    private long[][] masks = new long[0][];
+    private int[] keys = new int[0];
+    private int observations;
+    private int configurations;
+    private int cardinality;
+    private int parentClasses;
+    private int jointClasses;
+
+    void fill(Variable child, List<Variable> ps, CountingBackend backend) {
+        int m = child.obsNum();
+        observations = m;
+        int card = child.cardinality();
+        int ps_size = ps.size();
+        long limit = denseLimit(m);
+        long product = 1;
+        for (int j = 0; j < ps_size && product <= limit; j++) {
+            product *= ps.get(j).cardinality();
+        }
+
+        if (product * card <= limit) {
+            reset((int) product, card);
+            int words = (m + 63) >>> 6;
+            // rough costs: bitset intersections per configuration against one pass over all observations
+            if (product * (2 * card + 3) * words < 2L * m * (ps_size + 1)) {
+                countBitsets(child, ps, words);
+                countClasses();
+                return;
+            }
+            if (backend == CountingBackend.COLUMNAR) {
+                countColumns(child, ps, m);
+                countClasses();
+                return;
+            }
+            // configurations are indexed directly by the mixed-radix value of parents
+            for (int obs = 0; obs < m; obs++) {
+                int cfg = 0;
+                for (int j = 0; j < ps_size; j++) {
+                    Variable p = ps.get(j);
+                    cfg = cfg * p.cardinality() + (p.discreteValue(obs) - 1);
+                }
+                parent[cfg]++;
+                joint[cfg * card + child.discreteValue(obs) - 1]++;
+            }
+        } else {
+            Contingency cls = child.mapObs(ps);
+            int[] parentCls = cls.parentClasses();
+            reset(cls.parentClassCount(), card);
+            for (int obs = 0; obs < m; obs++) {
+                int cfg = parentCls[obs];
+                parent[cfg]++;
+                joint[cfg * card + child.discreteValue(obs) - 1]++;
+            }
+        }
+        countClasses();
+    }
+
+    private void countColumns(Variable child, List<Variable> ps, int m) {
+        if (keys.length != m) {
+            keys = new int[m];
+        } else {
+            Arrays.fill(keys, 0);
+        }
+        // keys of (configuration, child value) pairs are built one column at a time
+        for (Variable p : ps) {
+            p.accumulateKeys(keys, p.cardinality());
+        }
+        countJoint(child, m);
+    }
+
+    /**
+     * Counts joint keys built from parent configurations already stored in {@code keys}.
+     */
+    private void countJoint(Variable child, int m) {
+        child.accumulateKeys(keys, cardinality);
+        for (int obs = 0; obs < m; obs++) {
+            joint[keys[obs]]++;
+        }
+        int card = cardinality;
+        for (int cfg = 0; cfg < configurations; cfg++) {
+            int occ = 0;
+            for (int v = 0; v < card; v++) {
+                occ += joint[cfg * card + v];
+            }
+            parent[cfg] = occ;
+        }
+    }
+
+    /**
+     * Largest number of (configuration, child value) pairs counted in a dense table for {@code m} observations.
+     */
+    static long denseLimit(int m) {
+        return Math.max(DENSE_LIMIT, m);
+    }
+
+    /**
+     * Counts the family obtained from {@code ps} by removing {@code candidate} if it is a parent
+     * or adding it otherwise. {@code base} holds the dense configurations of {@code ps} and
+     * {@code product} their number. The layout is the same as {@link #fill} produces for that family,
+     * so tables and scores are identical. Returns false without counting if the family doesn't fit a dense table.
+     */
+    boolean fillToggled(Variable child, ParentSet ps, List<Variable> variables, int[] base, int product, int candidate) {
+        int m = child.obsNum();
+        int card = child.cardinality();
+        Variable c = variables.get(candidate);
+        int cardC = c.cardinality();
+        // configurations are mixed-radix numbers with the first parent most significant,
+        // weight is the place value of the candidate digit
+        int weight = 1;
+        boolean remove = false;
+        for (int j = ps.size() - 1; j >= 0; j--) {
+            int p = ps.get(j);
+            if (p < candidate) {
+                break;
+            }
+            if (p == candidate) {
+                remove = true;
+                break;
+            }
+            weight *= variables.get(p).cardinality();
+        }
+        long configurations = remove ? product / cardC : (long) product * cardC;
+        if (configurations * card > denseLimit(m)) {
+            return false;
+        }
+        observations = m;
+        reset((int) configurations, card);
+        if (keys.length != m) {
+            keys = new int[m];
+        }
+        int high = weight * cardC;
+        if (remove) {
+            for (int obs = 0; obs < m; obs++) {
+                int cfg = base[obs];
+                keys[obs] = cfg / high * weight + cfg % weight;
+            }
+        } else {
+            for (int obs = 0; obs < m; obs++) {
+                int cfg = base[obs];
+                keys[obs] = cfg / weight * high + (c.discreteValue(obs) - 1) * weight + cfg % weight;
+            }
+        }
+        countJoint(child, m);
+        countClasses();
+        return true;
+    }
+
+    private void countBitsets(Variable child, List<Variable> ps, int words) {
+        if (masks.length < ps.size() + 1 || masks[0].length != words) {
+            masks = new long[ps.size() + 1][words];
+        }
+        long[] all = masks[0];
+        Arrays.fill(all, -1L);
+        int tail = child.obsNum() & 63;
+        if (tail != 0) {
+            all[words - 1] = (1L << tail) - 1;
+        }
+        countBitsets(child, ps, 0, 0);
+    }
+
+    // masks[depth] holds observations matching the configuration of the first depth parents
+    private void countBitsets(Variable child, List<Variable> ps, int depth, int cfg) {
+        long[] mask = masks[depth];
+        if (depth == ps.size()) {
+            int occ = popCount(mask);
+            parent[cfg] = occ;
+            int card = cardinality;
+            for (int v = 1; v < card; v++) {
+                int occ_value = popCountAnd(mask, child.classIndicator(v));
+                joint[cfg * card + v - 1] = occ_value;
+                occ -= occ_value;
+            }
+            joint[cfg * card + card - 1] = occ;
+            return;
+        }
+        Variable p = ps.get(depth);
+        long[] next = masks[depth + 1];
+        for (int v = 1; v <= p.cardinality(); v++) {
+            if (and(mask, p.classIndicator(v), next)) {
+                countBitsets(child, ps, depth + 1, cfg * p.cardinality() + v - 1);
+            }
+        }
+    }
+
+    private static boolean and(long[] a, long[] b, long[] result) {
+        long any = 0;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = a[i] & b[i];
+            any |= result[i];
+        }
+        return any != 0;
+    }
+
+    private static int popCount(long[] a) {
+        int count = 0;
+        for (long w : a) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+
+    private static int popCountAnd(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            count += Long.bitCount(a[i] & b[i]);
+        }
+        return count;
+    }
+
+    private void reset(int configurations, int cardinality) {
+        this.configurations = configurations;
+        this.cardinality = cardinality;
+        int jointSize = configurations * cardinality;
+        if (parent.length < configurations) {
+            parent = new int[Math.max(configurations, 2 * parent.length)];
+        } else {
+            Arrays.fill(parent, 0, configurations, 0);
+        }
+        if (joint.length < jointSize) {
+            joint = new int[Math.max(jointSize, 2 * joint.length)];
+        } else {
+            Arrays.fill(joint, 0, jointSize, 0);
+        }
+    }
+
+    private void countClasses() {
+        parentClasses = 0;
+        for (int i = 0; i < configurations; i++) {
+            if (parent[i] != 0) {
+                parentClasses++;
+            }
+        }
+        jointClasses = 0;
+        int jointSize = configurations * cardinality;
+        for (int i = 0; i < jointSize; i++) {
+            if (joint[i] != 0) {
+                jointClasses++;
+            }
+        }
+    }
+
+    /**
+     * Number of observations counted in the table.
+     */
+    int observations() {
+        return observations;
+    }
+
+    /**
+     * Number of parent configurations, including the unobserved ones.
+     */
+    int configurations() {
+        return configurations;
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    int parentCount(int cfg) {
+        return parent[cfg];
+    }
+
+    int jointCount(int cfg, int value) {
+        return joint[cfg * cardinality + value];
+    }
+
+    /**
+     * Number of observed parent configurations.
+     */
+    int parentClasses() {
+        return parentClasses;
+    }
+
+    /**
+     * Number of observed (parent configuration, child value) pairs.
+     */
+    int jointClasses() {
+        return jointClasses;
+    }
+}
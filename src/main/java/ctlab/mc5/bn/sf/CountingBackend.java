@@ -0,0 +1,16 @@
+package ctlab.mc5.bn.sf;
+
+/**
+ * How contingency tables of small parent configuration spaces are counted.
+ */
+public enum CountingBackend {
+    /**
+     * One pass over observations computing the configuration of each observation from all parents.
+     */
+    SCALAR,
+    /**
+     * Configuration keys are built column by column in tight loops over primitive arrays
+     * that the JIT unrolls and vectorizes, then counted in a single histogram pass.
+     */
+    COLUMNAR
+}
@@ -10,44 +10,32 @@ public class K2 extends ScoringFunction {
     }
 
     @Override
-    public ScoringFunction cp_internal() {
-        return new K2();
+    public void setLogFactorial(LogFactorial lf) {
+        this.lf = lf;
     }
 
     @Override
-    double score(int[] parent_cls, int[] all_cls, int cardinality) {
-
-        int num_cls = 0;
-        int num_all_cls = 0;
-        for (int v: parent_cls) {
-            num_cls = Math.max(num_cls, v);
-        }
-        for (int v: all_cls) {
-            num_all_cls = Math.max(num_all_cls, v);
-        }
-        num_cls += 1;
-        num_all_cls += 1;
-
-        int n = parent_cls.length;
-
-        int[] occ_parent_cls = new int[num_cls];
-        int[] occ_all_cls = new int[num_all_cls];
-
-        for (int i = 0; i < n; i++) {
-            occ_parent_cls[parent_cls[i]]++;
-            occ_all_cls[all_cls[i]]++;
-        }
+    public ScoringFunction cp_internal() {
+        K2 sf = new K2();
+        sf.lf = lf;
+        return sf;
+    }
 
+    @Override
+    double score(ContingencyTable table, int cardinality) {
         double value = 0.0;
 
-        for (int i = 0; i < num_all_cls; i++) {
-            value += lf.value(occ_all_cls[i]);
-        }
-
         double nom = lf.value(cardinality - 1);
-        for (int i = 0; i < num_cls; i++) {
+        for (int cfg = 0; cfg < table.configurations(); cfg++) {
+            int occ_parent = table.parentCount(cfg);
+            if (occ_parent == 0) {
+                continue;
+            }
+            for (int v = 0; v < cardinality; v++) {
+                value += lf.value(table.jointCount(cfg, v));
+            }
             value += nom;
-            value -= lf.value(occ_parent_cls[i] + cardinality - 1);
+            value -= lf.value(occ_parent + cardinality - 1);
         }
 
         return value;
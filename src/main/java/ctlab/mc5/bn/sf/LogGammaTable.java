@@ -0,0 +1,58 @@
+package ctlab.mc5.bn.sf;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.apache.commons.math3.special.Gamma.logGamma;
+
+/**
+ * Process wide tables of {@code logGamma(k + alpha)} for integer counts {@code k},
+ * built on first use of every {@code alpha} and shared by all chains and threads.
+ * Only {@code alpha = iss / divisor} with small divisors and counts get a table and the number of tables
+ * is capped, which keeps them within a few tens of megabytes; callers compute other values directly.
+ */
+final class LogGammaTable {
+    static final int MAX_DIVISOR = 256;
+    static final int MAX_TABLES = 256;
+    static final int MAX_COUNT = 1 << 14;
+
+    private static final ConcurrentMap<Long, double[]> TABLES = new ConcurrentHashMap<>();
+
+    private LogGammaTable() {
+    }
+
+    /**
+     * Table holding {@code logGamma(k + iss / divisor)} at index {@code k} for at least {@code 0 <= k <= maxCount},
+     * or null if such an alpha is not tabulated. The returned array is shared and must not be modified.
+     */
+    static double[] of(double iss, int divisor, int maxCount) {
+        if (divisor > MAX_DIVISOR || maxCount >= MAX_COUNT) {
+            return null;
+        }
+        double alpha = iss / divisor;
+        Long key = Double.doubleToLongBits(alpha);
+        double[] table = TABLES.get(key);
+        if (table == null && TABLES.size() >= MAX_TABLES) {
+            // concurrent first uses may overshoot the cap by the number of threads at most
+            return null;
+        }
+        if (table == null || table.length <= maxCount) {
+            table = TABLES.compute(key, (k, old) -> old != null && old.length > maxCount ? old : grow(old, alpha, maxCount));
+        }
+        return table;
+    }
+
+    static int tables() {
+        return TABLES.size();
+    }
+
+    private static double[] grow(double[] old, double alpha, int maxCount) {
+        int from = old == null ? 0 : old.length;
+        double[] table = old == null ? new double[maxCount + 1] : Arrays.copyOf(old, Math.max(maxCount + 1, Math.min(2 * from, MAX_COUNT)));
+        for (int k = from; k < table.length; k++) {
+            table[k] = logGamma(k + alpha);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,84 @@
+package ctlab.mc5.bn.sf;
+
+import ctlab.mc5.bn.ParentSet;
+import ctlab.mc5.bn.Variable;
+
+import java.util.List;
+
+/**
+ * Partition of observations by the values of a fixed parent set of a child: the dense mixed-radix
+ * configuration of every observation, computed on first use. A family that differs from it in a single
+ * parent is counted from it in one pass over observations, see {@link ScoringFunction#scoreToggled}.
+ * Partitions too large for a dense table are not materialized.
+ */
+public final class ParentPartition {
+    private final Variable child;
+    private final ParentSet parents;
+    private final List<Variable> variables;
+    private final long version;
+    private int[] configs;
+    private int product;
+    private boolean computed;
+
+    public ParentPartition(Variable child, ParentSet parents, List<Variable> variables) {
+        this.child = child;
+        this.parents = parents;
+        this.variables = variables;
+        this.version = ScoringFunction.version(child, parents, variables);
+    }
+
+    public Variable child() {
+        return child;
+    }
+
+    public ParentSet parents() {
+        return parents;
+    }
+
+    List<Variable> variables() {
+        return variables;
+    }
+
+    /**
+     * Whether this partition still describes the given parent set under the current discretizations.
+     */
+    public boolean isCurrent(ParentSet parents) {
+        return this.parents.equals(parents) && version == ScoringFunction.version(child, parents, variables);
+    }
+
+    private void compute() {
+        computed = true;
+        int m = child.obsNum();
+        long limit = ContingencyTable.denseLimit(m);
+        long product = 1;
+        for (int j = 0; j < parents.size() && product <= limit; j++) {
+            product *= variables.get(parents.get(j)).cardinality();
+        }
+        if (product * child.cardinality() > limit) {
+            return;
+        }
+        this.product = (int) product;
+        configs = new int[m];
+        for (int j = 0; j < parents.size(); j++) {
+            Variable p = variables.get(parents.get(j));
+            p.accumulateKeys(configs, p.cardinality());
+        }
+    }
+
+    /**
+     * Configuration of every observation, or null if the partition doesn't fit a dense table.
+     */
+    int[] configs() {
+        if (!computed) {
+            compute();
+        }
+        return configs;
+    }
+
+    /**
+     * Number of configurations, valid if {@link #configs()} is not null.
+     */
+    int product() {
+        return product;
+    }
+}
@@ -0,0 +1,370 @@
+package ctlab.mc5.bn.sf;
+
+import ctlab.mc5.bn.ParentSet;
+import ctlab.mc5.bn.Variable;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded thread safe cache of family scores shared by all copies of a scoring function,
+ * i.e. by all chains of all runs. Entries are keyed by the child, the parent set and
+ * the discretizations of all of them, so chains with different discretizations never mix.
+ * The cache is split into independently locked segments. The capacity is global and
+ * is usually derived from a memory budget, see {@link #withBudget}.
+ */
+public class ScoreCache implements Serializable {
+    /**
+     * Rough heap footprint of a single entry: key, parent set, boxed score, list node and hash table slot.
+     */
+    public static final int ENTRY_BYTES = 192;
+
+    public enum Policy {
+        /**
+         * Least recently used entry is evicted.
+         */
+        LRU,
+        /**
+         * W-TinyLFU: new entries pass an LRU window of a fifth of the capacity, then replace the least recently
+         * used entry of the main region only if they were requested more often, so scans can't flush hot families.
+         */
+        TINY_LFU
+    }
+
+    private static final int SEGMENTS = 64;
+
+    private final Policy policy;
+    private final int capacity;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ScoreCache(int capacity) {
+        this(capacity, Policy.LRU);
+    }
+
+    public ScoreCache(int capacity, Policy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.policy = policy;
+        this.capacity = capacity;
+        segments = new Segment[SEGMENTS];
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity, policy);
+        }
+    }
+
+    public static ScoreCache withBudget(long bytes, Policy policy) {
+        return new ScoreCache((int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / ENTRY_BYTES)), policy);
+    }
+
+    /**
+     * Key of a family whose parents are given in ascending order of their numbers.
+     */
+    static Key key(Variable v, List<Variable> ps) {
+        int[] parents = new int[ps.size()];
+        long version = v.discretizationVersion();
+        for (int i = 0; i < parents.length; i++) {
+            Variable p = ps.get(i);
+            parents[i] = p.getNumber();
+            version = combine(version, p);
+        }
+        return new Key(v.getNumber(), ParentSet.of(parents), version);
+    }
+
+    /**
+     * Folds the discretization of the next parent in ascending order into the version of a family.
+     */
+    static long combine(long version, Variable parent) {
+        return version * 0x9E3779B97F4A7C15L + parent.discretizationVersion();
+    }
+
+    private Segment segment(Key key) {
+        return segments[(int) (key.hash64 >>> 58)];
+    }
+
+    Double get(Key key) {
+        Segment s = segment(key);
+        Double res;
+        synchronized (s) {
+            res = s.get(key);
+        }
+        if (res == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return res;
+    }
+
+    void put(Key key, double score) {
+        Segment s = segment(key);
+        synchronized (s) {
+            s.put(key, score);
+        }
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                size += s.size();
+            }
+        }
+        return size;
+    }
+
+    // only the settings are serialized, e.g. to Spark executors, which start with an empty cache
+    private Object writeReplace() {
+        return new Settings(capacity, policy);
+    }
+
+    private static final class Settings implements Serializable {
+        private final int capacity;
+        private final Policy policy;
+
+        Settings(int capacity, Policy policy) {
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+
+        private Object readResolve() {
+            return new ScoreCache(capacity, policy);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long h = hits();
+        long total = h + misses();
+        return String.format("%s, hits = %d, misses = %d, hit rate = %.3f, size = %d of %d",
+                policy, h, total - h, total == 0 ? 0.0 : (double) h / total, size(), capacity);
+    }
+
+    static final class Key {
+        private final int child;
+        private final ParentSet parents;
+        private final long version;
+        private final long hash64;
+
+        Key(int child, ParentSet parents, long version) {
+            this.child = child;
+            this.parents = parents;
+            this.version = version;
+            long h = (parents.hash64() + child) * 0x9E3779B97F4A7C15L + version;
+            h ^= h >>> 31;
+            h *= 0xbf58476d1ce4e5b9L;
+            this.hash64 = h ^ (h >>> 29);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash64 == key.hash64 && child == key.child && version == key.version
+                    && parents.equals(key.parents);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) hash64;
+        }
+    }
+
+    private static final class Node {
+        private final Key key;
+        private double score;
+        private boolean main;
+        private Node prev;
+        private Node next;
+
+        Node(Key key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Doubly linked list ordered from least to most recently used.
+     */
+    private static final class Queue {
+        private Node head;
+        private Node tail;
+        private int size;
+
+        void add(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void touch(Node node) {
+            if (node != tail) {
+                remove(node);
+                add(node);
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch of request frequencies with 4 bit saturating counters,
+     * halved after every {@code 10 * capacity} increments so that old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, 4 * capacity - 1) << 1);
+            table = new byte[DEPTH * width];
+            mask = width - 1;
+            sampleSize = 10 * Math.max(capacity, 16);
+        }
+
+        private int index(long hash, int row) {
+            int h = (int) hash + row * (int) (hash >>> 32);
+            return row * (mask + 1) + ((h ^ (h >>> 16)) & mask);
+        }
+
+        void increment(long hash) {
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int i = index(hash, row);
+                if (table[i] < MAX_COUNT) {
+                    table[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(long hash) {
+            int res = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                res = Math.min(res, table[index(hash, row)]);
+            }
+            return res;
+        }
+    }
+
+    private static final class Segment {
+        private final Map<Key, Node> map = new HashMap<>();
+        private final Queue window = new Queue();
+        private final Queue main = new Queue();
+        private final FrequencySketch sketch;
+        private final int windowCapacity;
+        private final int mainCapacity;
+
+        Segment(int capacity, Policy policy) {
+            if (policy == Policy.LRU) {
+                windowCapacity = capacity;
+                mainCapacity = 0;
+                sketch = null;
+            } else {
+                windowCapacity = Math.max(1, capacity / 5);
+                mainCapacity = capacity - windowCapacity;
+                sketch = new FrequencySketch(capacity);
+            }
+        }
+
+        int size() {
+            return map.size();
+        }
+
+        Double get(Key key) {
+            if (sketch != null) {
+                sketch.increment(key.hash64);
+            }
+            Node node = map.get(key);
+            if (node == null) {
+                return null;
+            }
+            (node.main ? main : window).touch(node);
+            return node.score;
+        }
+
+        void put(Key key, double score) {
+            Node node = map.get(key);
+            if (node != null) {
+                node.score = score;
+                return;
+            }
+            node = new Node(key, score);
+            map.put(key, node);
+            window.add(node);
+            if (window.size <= windowCapacity) {
+                return;
+            }
+            Node candidate = window.head;
+            window.remove(candidate);
+            if (main.size < mainCapacity) {
+                candidate.main = true;
+                main.add(candidate);
+                return;
+            }
+            Node victim = main.head;
+            if (victim != null && sketch.frequency(candidate.key.hash64) > sketch.frequency(victim.key.hash64)) {
+                main.remove(victim);
+                map.remove(victim.key);
+                candidate.main = true;
+                main.add(candidate);
+            } else {
+                map.remove(candidate.key);
+            }
+        }
+    }
+}
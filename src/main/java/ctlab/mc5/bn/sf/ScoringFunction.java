@@ -1,81 +1,178 @@
 package ctlab.mc5.bn.sf;
 
+import ctlab.mc5.bn.LogFactorial;
+import ctlab.mc5.bn.ParentSet;
 import ctlab.mc5.bn.Variable;
-import org.apache.commons.math3.util.Pair;
 
 import java.io.Serializable;
 import java.util.*;
 
 public abstract class ScoringFunction implements Serializable {
 
-    private static class Cache implements Serializable {
-        private static final int CACHE_SIZE = 1000;
+    private static final long DEFAULT_CACHE_BYTES = 64L << 20;
+    private static final int MAX_PARENTS = 10;
 
-        private Queue<List<Variable>> queue;
-        private Map<List<Variable>, Double> map;
+    private static final ThreadLocal<ContingencyTable> TABLE = ThreadLocal.withInitial(ContingencyTable::new);
 
-        Cache() {
-            queue = new ArrayDeque<>();
-            map = new HashMap<>();
-        }
-
-        Double get(List<Variable> ps) {
-            return map.getOrDefault(ps, null);
-        }
+    private ScoreCache cache;
+    private CountingBackend backend = CountingBackend.COLUMNAR;
 
-        void add(List<Variable> ps, double score) {
-            if (queue.size() == CACHE_SIZE) {
-                List<Variable> key = queue.poll();
-                map.remove(key);
-            }
-            map.put(ps, score);
-            queue.add(ps);
+    public void init(int n) {
+        if (cache == null) {
+            cache = ScoreCache.withBudget(DEFAULT_CACHE_BYTES, ScoreCache.Policy.LRU);
         }
+    }
 
-        void clear() {
-            map.clear();
-            queue.clear();
-        }
+    /**
+     * Copies share the score cache of this function.
+     */
+    public ScoringFunction cp() {
+        ScoringFunction sf = cp_internal();
+        sf.cache = cache;
+        sf.backend = backend;
+        return sf;
     }
 
-    private List<Cache> ht;
+    public ScoreCache getCache() {
+        return cache;
+    }
 
-    ScoringFunction() {
-        ht = new ArrayList<>();
+    public void setCache(ScoreCache cache) {
+        this.cache = cache;
     }
 
-    public void init(int n) {
-        for (int i = 0; i < n; i++) {
-            ht.add(i, new Cache());
-        }
+    public CountingBackend getCountingBackend() {
+        return backend;
     }
 
-    public ScoringFunction cp() {
-        ScoringFunction sf = cp_internal();
-        sf.init(ht.size());
-        return sf;
+    public void setCountingBackend(CountingBackend backend) {
+        this.backend = backend;
     }
 
     abstract public ScoringFunction cp_internal();
 
+    /**
+     * Table of log factorials shared by the network, for scoring functions that need one.
+     */
+    public void setLogFactorial(LogFactorial lf) {
+    }
+
     public double score(Variable v, List<Variable> ps, int n) {
-        if (ps.size() > 10) {
+        if (ps.size() > MAX_PARENTS) {
             return Double.NEGATIVE_INFINITY;
         }
         Collections.sort(ps);
-        Double resCache = ht.get(v.getNumber()).get(ps);
+        return score(v, ScoreCache.key(v, ps), ps);
+    }
+
+    /**
+     * Scores the family of {@code v} with parents given by their numbers, i.e. indices in {@code variables}.
+     * Cache hits neither sort nor allocate parent lists.
+     */
+    public double score(Variable v, ParentSet ps, List<Variable> variables) {
+        if (ps.size() > MAX_PARENTS) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        ScoreCache.Key key = key(v, ps, variables);
+        Double resCache = cache.get(key);
+        if (resCache != null) {
+            assert score(count(v, parents(ps, variables), backend), v.cardinality()) == resCache;
+            return resCache;
+        }
+        double res = score(count(v, parents(ps, variables), backend), v.cardinality());
+        cache.put(key, res);
+        return res;
+    }
+
+    /**
+     * Scores every family of {@code v} obtained from {@code ps} by toggling one of {@code candidates}:
+     * a candidate that is a parent is removed, any other node is added. Configurations of the current
+     * parents are computed once, after that every candidate missing in the cache costs a single pass over observations.
+     * Results are equal to {@link #score(Variable, ParentSet, List)} of the corresponding families.
+     */
+    public void scoreCandidates(Variable v, ParentSet ps, int[] candidates, List<Variable> variables, double[] scores) {
+        scoreCandidates(new ParentPartition(v, ps, variables), candidates, candidates.length, scores);
+    }
+
+    /**
+     * Same as above for the first {@code count} candidates, so that callers can reuse larger arrays.
+     */
+    public void scoreCandidates(ParentPartition partition, int[] candidates, int count, double[] scores) {
+        for (int i = 0; i < count; i++) {
+            scores[i] = scoreToggled(partition, candidates[i]);
+        }
+    }
+
+    /**
+     * Score of the family obtained from the partitioned parent set by removing {@code candidate}
+     * if it is a parent or adding it otherwise. On a cache miss the partition is refined with the candidate column
+     * or coarsened by dropping it, which is a single pass over observations.
+     */
+    public double scoreToggled(ParentPartition partition, int candidate) {
+        Variable v = partition.child();
+        ParentSet ps = partition.parents();
+        List<Variable> variables = partition.variables();
+        ParentSet set = ps.contains(candidate) ? ps.without(candidate) : ps.with(candidate);
+        if (set.size() > MAX_PARENTS) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        ScoreCache.Key key = key(v, set, variables);
+        Double resCache = cache.get(key);
+        if (resCache != null) {
+            assert score(count(v, parents(set, variables), backend), v.cardinality()) == resCache;
+            return resCache;
+        }
+        double res;
+        int[] configs = partition.configs();
+        ContingencyTable table = TABLE.get();
+        if (configs != null && table.fillToggled(v, ps, variables, configs, partition.product(), candidate)) {
+            res = score(table, v.cardinality());
+        } else {
+            res = score(count(v, parents(set, variables), backend), v.cardinality());
+        }
+        cache.put(key, res);
+        return res;
+    }
+
+    static long version(Variable v, ParentSet ps, List<Variable> variables) {
+        long version = v.discretizationVersion();
+        for (int i = 0; i < ps.size(); i++) {
+            version = ScoreCache.combine(version, variables.get(ps.get(i)));
+        }
+        return version;
+    }
+
+    private static ScoreCache.Key key(Variable v, ParentSet ps, List<Variable> variables) {
+        return new ScoreCache.Key(v.getNumber(), ps, version(v, ps, variables));
+    }
+
+    private double score(Variable v, ScoreCache.Key key, List<Variable> ps) {
+        Double resCache = cache.get(key);
         if (resCache != null) {
-            assert score(v.mapObs(ps).getFirst(), v.mapObs(ps).getSecond(), v.cardinality()) == resCache;
+            assert score(count(v, ps, backend), v.cardinality()) == resCache;
             return resCache;
         }
-        Pair<int[], int[]> cls = v.mapObs(ps);
 
-        double res = score(cls.getFirst(), cls.getSecond(), v.cardinality());
-        ht.get(v.getNumber()).add(ps, res);
+        double res = score(count(v, ps, backend), v.cardinality());
+        cache.put(key, res);
         return res;
     }
 
-    abstract double score(int[] parent_cls, int[] all_cls, int cardinality);
+    private static List<Variable> parents(ParentSet ps, List<Variable> variables) {
+        List<Variable> res = new ArrayList<>(ps.size());
+        for (int i = 0; i < ps.size(); i++) {
+            res.add(variables.get(ps.get(i)));
+        }
+        return res;
+    }
+
+    static ContingencyTable count(Variable v, List<Variable> ps, CountingBackend backend) {
+        ContingencyTable table = TABLE.get();
+        table.fill(v, ps, backend);
+        return table;
+    }
+
+    abstract double score(ContingencyTable table, int cardinality);
 
     public static ScoringFunction parse(String s) {
         String[] parts = s.split("\\s");
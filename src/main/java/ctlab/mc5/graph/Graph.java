@@ -1,5 +1,6 @@
 package ctlab.mc5.graph;
 
+import ctlab.mc5.bn.ParentSet;
 import ctlab.mc5.bn.Variable;
 import org.apache.commons.math3.util.Pair;
 
@@ -10,31 +11,42 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class Graph {
+    /**
+     * Graphs with more vertices than this use sparse edge and subscription storage by default.
+     */
+    public static final int DENSE_LIMIT = 1024;
+
+    public enum Representation {
+        DENSE, SPARSE
+    }
+
     private List<List<Edge>> adj;
     private List<List<Edge>> radj;
     private List<Edge> edgelist;
-    private Edge[][] edges;
-    private int[][] subscriptions;
+    private EdgeStorage storage;
     private int edgeCount;
+    // XOR of ParentSet.zobrist over the parents of every vertex
+    private long[] parentHash;
 
-    private List<Map<Integer, DynamicGraph.EdgeToken>> tokens;
     private DynamicGraph dgraph;
     private BiConsumer<Integer, Integer> noPathSupportCallback;
 
     public Graph(int n) {
+        this(n, n > DENSE_LIMIT ? Representation.SPARSE : Representation.DENSE);
+    }
+
+    public Graph(int n, Representation representation) {
         adj = new ArrayList<>();
         radj = new ArrayList<>();
         edgelist = new ArrayList<>();
         dgraph = new DynamicGraph(n);
-        tokens = new ArrayList<>();
 
         for (int i = 0; i < n; i++) {
             adj.add(new ArrayList<>());
             radj.add(new ArrayList<>());
-            tokens.add(new HashMap<>());
         }
-        edges = new Edge[n][n];
-        subscriptions = new int[n][n];
+        storage = representation == Representation.DENSE ? new DenseStorage(n) : new SparseStorage(n);
+        parentHash = new long[n];
         edgeCount = 0;
     }
 
@@ -43,7 +55,7 @@ public class Graph {
     }
 
     public Graph(Graph g) {
-        this(g.size());
+        this(g.size(), g.representation());
         for (int from = 0; from < g.size(); from++) {
             for (int to : g.outgoingEdges(from)) {
                 addEdge(from, to);
@@ -95,6 +107,10 @@ public class Graph {
         return adj.size();
     }
 
+    public Representation representation() {
+        return storage.representation();
+    }
+
     private int dfs(int v, List<Boolean> vis, List<Integer> out, int time) {
         vis.set(v, true);
         for (int u : outgoingEdges(v)) {
@@ -128,16 +144,16 @@ public class Graph {
     }
 
     public boolean isSubscribed(int first, int last) {
-        return subscriptions[first][last] > 0;
+        return storage.subscriptions(first, last) > 0;
     }
 
     private void processPath(Pair<Integer, Integer> meet, int first, int last, int[] parent) {
         Subscription subscription = new Subscription(first, last);
-        ++subscriptions[first][last];
+        storage.subscribe(first, last, 1);
         int v = meet.getFirst();
         int u = meet.getSecond();
         while (u != first) {
-            subscription.addBackReference(edges[v][u].subscribe(subscription));
+            subscription.addBackReference(storage.edge(v, u).subscribe(subscription));
             u = v;
             v = parent[v];
         }
@@ -146,7 +162,7 @@ public class Graph {
         v = meet.getSecond();
         u = parent[v];
         while (v != last) {
-            subscription.addBackReference(edges[v][u].subscribe(subscription));
+            subscription.addBackReference(storage.edge(v, u).subscribe(subscription));
             v = u;
             u = parent[u];
         }
@@ -189,37 +205,31 @@ public class Graph {
         if (!dgraph.isConnected(from, to)) {
             return false;
         }
-        if (subscriptions[from][to] > 0) {
+        if (storage.subscriptions(from, to) > 0) {
             return true;
         }
         return meetAtTheMiddle(from, to);
     }
 
     public boolean edgeExists(int from, int to) {
-        return edges[from][to] != null;
+        return storage.edge(from, to) != null;
     }
 
     public void addEdge(int from, int to) {
-        assert edges[from][to] == null;
-        edges[from][to] = new Edge(from, to, adj.get(from).size(), radj.get(to).size(), edgelist.size());
-        adj.get(from).add(edges[from][to]);
-        radj.get(to).add(edges[from][to]);
-        edgelist.add(edges[from][to]);
-        DynamicGraph.EdgeToken token = dgraph.add(from, to);
-        assert token != null;
-
-//        if (to < from) {
-//            int t = to;
-//            to = from;
-//            from = t;
-//        }
-//        assert from < to;
-        tokens.get(from).put(to, token);
+        assert storage.edge(from, to) == null;
+        Edge e = new Edge(from, to, adj.get(from).size(), radj.get(to).size(), edgelist.size());
+        storage.setEdge(from, to, e);
+        adj.get(from).add(e);
+        radj.get(to).add(e);
+        edgelist.add(e);
+        e.token = dgraph.add(from, to);
+        assert e.token != null;
+        parentHash[to] ^= ParentSet.zobrist(from);
         edgeCount++;
     }
 
     public void removeEdge(int from, int to) {
-        Edge e = edges[from][to];
+        Edge e = storage.edge(from, to);
         e.unsubscribe();
         List<Edge> nei = adj.get(from);
         List<Edge> rnei = radj.get(to);
@@ -236,20 +246,23 @@ public class Graph {
         nei.remove(nei.size() - 1);
         rnei.remove(rnei.size() - 1);
         edgelist.remove(edgelist.size() - 1);
-        edges[from][to] = null;
-
-//        if (to < from) {
-//            int t = to;
-//            to = from;
-//            from = t;
-//        }
-        DynamicGraph.EdgeToken token = tokens.get(from).remove(to);
-        assert token != null;
+        storage.setEdge(from, to, null);
+
+        assert e.token != null;
         assert edgeCount != 0;
-        dgraph.remove(token);
+        dgraph.remove(e.token);
+        e.token = null;
+        parentHash[to] ^= ParentSet.zobrist(from);
         edgeCount--;
     }
 
+    /**
+     * Hash of the parent set of a vertex, equal to {@link ParentSet#hash64()} of that set.
+     */
+    public long parentHash(int to) {
+        return parentHash[to];
+    }
+
     public int getEdgeCount() {
         return edgeCount;
     }
@@ -258,6 +271,109 @@ public class Graph {
         return radj.get(to).size();
     }
 
+    private interface EdgeStorage {
+        Representation representation();
+
+        Edge edge(int from, int to);
+
+        void setEdge(int from, int to, Edge e);
+
+        int subscriptions(int first, int last);
+
+        void subscribe(int first, int last, int delta);
+    }
+
+    private static class DenseStorage implements EdgeStorage {
+        private Edge[][] edges;
+        private int[][] subscriptions;
+
+        DenseStorage(int n) {
+            edges = new Edge[n][n];
+            subscriptions = new int[n][n];
+        }
+
+        @Override
+        public Representation representation() {
+            return Representation.DENSE;
+        }
+
+        @Override
+        public Edge edge(int from, int to) {
+            return edges[from][to];
+        }
+
+        @Override
+        public void setEdge(int from, int to, Edge e) {
+            edges[from][to] = e;
+        }
+
+        @Override
+        public int subscriptions(int first, int last) {
+            return subscriptions[first][last];
+        }
+
+        @Override
+        public void subscribe(int first, int last, int delta) {
+            subscriptions[first][last] += delta;
+        }
+    }
+
+    private static class SparseStorage implements EdgeStorage {
+        private static final int INITIAL_CAPACITY = 4;
+
+        private List<IntObjectHashMap<Edge>> edges;
+        private IntIntHashMap[] subscriptions;
+
+        SparseStorage(int n) {
+            edges = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                edges.add(null);
+            }
+            subscriptions = new IntIntHashMap[n];
+        }
+
+        @Override
+        public Representation representation() {
+            return Representation.SPARSE;
+        }
+
+        @Override
+        public Edge edge(int from, int to) {
+            IntObjectHashMap<Edge> out = edges.get(from);
+            return out == null ? null : out.get(to);
+        }
+
+        @Override
+        public void setEdge(int from, int to, Edge e) {
+            IntObjectHashMap<Edge> out = edges.get(from);
+            if (e == null) {
+                if (out != null) {
+                    out.remove(to);
+                }
+                return;
+            }
+            if (out == null) {
+                out = new IntObjectHashMap<>(INITIAL_CAPACITY);
+                edges.set(from, out);
+            }
+            out.put(to, e);
+        }
+
+        @Override
+        public int subscriptions(int first, int last) {
+            IntIntHashMap row = subscriptions[first];
+            return row == null ? 0 : row.get(last);
+        }
+
+        @Override
+        public void subscribe(int first, int last, int delta) {
+            if (subscriptions[first] == null) {
+                subscriptions[first] = new IntIntHashMap(INITIAL_CAPACITY);
+            }
+            subscriptions[first].add(last, delta);
+        }
+    }
+
     private class Subscription {
         private int v;
         private int u;
@@ -274,7 +390,7 @@ public class Graph {
         }
 
         public void processDeletion() {
-            --subscriptions[v][u];
+            storage.subscribe(v, u, -1);
             if (noPathSupportCallback != null) {
                 noPathSupportCallback.accept(v, u);
             }
@@ -351,6 +467,7 @@ public class Graph {
         private int rpos;
         private int listpos;
         private LinkedList subscriptions;
+        private DynamicGraph.EdgeToken token;
 
         Edge(int from, int to, int pos, int rpos, int listpos) {
             this.from = from;
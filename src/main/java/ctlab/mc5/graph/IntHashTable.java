@@ -0,0 +1,113 @@
+package ctlab.mc5.graph;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing over non-negative int keys with linear probing. Subclasses keep values in arrays
+ * parallel to the keys and are told when entries move.
+ */
+abstract class IntHashTable {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int size;
+
+    IntHashTable(int initialCapacity) {
+        keys = new int[Integer.highestOneBit(Math.max(2, initialCapacity) * 2 - 1)];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Replaces the value arrays with empty ones of the given capacity and returns the old ones.
+     */
+    abstract Object allocateValues(int capacity);
+
+    /**
+     * Copies a value from the old value arrays during rehash.
+     */
+    abstract void copyValue(Object from, int fromPos, int toPos);
+
+    abstract void moveValue(int fromPos, int toPos);
+
+    abstract void clearValue(int pos);
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int locate(int key) {
+        int mask = keys.length - 1;
+        int pos = hash(key) & mask;
+        while (keys[pos] != EMPTY && keys[pos] != key) {
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    /**
+     * Position of the key or -1 if it is absent.
+     */
+    int find(int key) {
+        int pos = locate(key);
+        return keys[pos] == EMPTY ? -1 : pos;
+    }
+
+    /**
+     * Position of the key, a new entry with a cleared value is created if it is absent.
+     */
+    int insert(int key) {
+        int pos = locate(key);
+        if (keys[pos] == EMPTY) {
+            if (2 * (size + 1) > keys.length) {
+                rehash(keys.length * 2);
+                pos = locate(key);
+            }
+            keys[pos] = key;
+            clearValue(pos);
+            size++;
+        }
+        return pos;
+    }
+
+    void removeAt(int pos) {
+        int mask = keys.length - 1;
+        keys[pos] = EMPTY;
+        clearValue(pos);
+        size--;
+        // backward shift deletion keeps probe sequences intact without tombstones
+        int next = (pos + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - pos) & mask)) {
+                keys[pos] = keys[next];
+                keys[next] = EMPTY;
+                moveValue(next, pos);
+                pos = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object oldValues = allocateValues(capacity);
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int pos = locate(oldKeys[i]);
+                keys[pos] = oldKeys[i];
+                copyValue(oldValues, i, pos);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ctlab.mc5.graph;
+
+class IntIntHashMap extends IntHashTable {
+    private int[] values;
+
+    IntIntHashMap(int initialCapacity) {
+        super(initialCapacity);
+        values = new int[capacity()];
+    }
+
+    @Override
+    Object allocateValues(int capacity) {
+        int[] old = values;
+        values = new int[capacity];
+        return old;
+    }
+
+    @Override
+    void copyValue(Object from, int fromPos, int toPos) {
+        values[toPos] = ((int[]) from)[fromPos];
+    }
+
+    @Override
+    void moveValue(int fromPos, int toPos) {
+        values[toPos] = values[fromPos];
+        values[fromPos] = 0;
+    }
+
+    @Override
+    void clearValue(int pos) {
+        values[pos] = 0;
+    }
+
+    int get(int key) {
+        int pos = find(key);
+        return pos < 0 ? 0 : values[pos];
+    }
+
+    void add(int key, int delta) {
+        int pos = delta == 0 ? find(key) : insert(key);
+        if (pos < 0) {
+            return;
+        }
+        values[pos] += delta;
+        if (values[pos] == 0) {
+            removeAt(pos);
+        }
+    }
+}
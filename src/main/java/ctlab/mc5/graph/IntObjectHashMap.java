@@ -0,0 +1,51 @@
+package ctlab.mc5.graph;
+
+class IntObjectHashMap<V> extends IntHashTable {
+    private Object[] values;
+
+    IntObjectHashMap(int initialCapacity) {
+        super(initialCapacity);
+        values = new Object[capacity()];
+    }
+
+    @Override
+    Object allocateValues(int capacity) {
+        Object[] old = values;
+        values = new Object[capacity];
+        return old;
+    }
+
+    @Override
+    void copyValue(Object from, int fromPos, int toPos) {
+        values[toPos] = ((Object[]) from)[fromPos];
+    }
+
+    @Override
+    void moveValue(int fromPos, int toPos) {
+        values[toPos] = values[fromPos];
+        values[fromPos] = null;
+    }
+
+    @Override
+    void clearValue(int pos) {
+        values[pos] = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int pos = find(key);
+        return pos < 0 ? null : (V) values[pos];
+    }
+
+    void put(int key, V value) {
+        int pos = insert(key);
+        values[pos] = value;
+    }
+
+    void remove(int key) {
+        int pos = find(key);
+        if (pos >= 0) {
+            removeAt(pos);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ctlab.mc5.io;
+
+import ctlab.mc5.bn.ExpressionColumn;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Binary columnar copy of a preprocessed {@link ExpressionTable}.
+ *
+ * Layout (big-endian): magic, version, size and modification time of the source table,
+ * number of genes and observations, gene names, offsets of the columns; then for every gene
+ * the values, the ascending order of observations and the boundaries of distinct values.
+ * Columns start at 8-byte aligned offsets. Tables read from the cache are backed by the mapping.
+ */
+public class ExpressionCache {
+    private static final int MAGIC = 0x424E5343;
+    private static final int VERSION = 1;
+
+    /**
+     * Reads the table from the cache if it was built from the current version of the source,
+     * otherwise parses the source and (re)writes the cache.
+     */
+    public static ExpressionTable load(File source, File cache) throws IOException {
+        if (cache.exists()) {
+            try {
+                ExpressionTable table = read(cache, source);
+                if (table != null) {
+                    return table;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring broken expression cache " + cache + ": " + e.getMessage());
+            }
+        }
+        ExpressionTable table = ExpressionTable.read(source);
+        try {
+            write(table, source, cache);
+        } catch (IOException e) {
+            System.err.println("Failed to write expression cache " + cache + ": " + e.getMessage());
+        }
+        return table;
+    }
+
+    public static void write(ExpressionTable table, File source, File cache) throws IOException {
+        int genes = table.genes();
+        int m = genes == 0 ? 0 : table.column(0).size();
+        List<byte[]> names = new ArrayList<>(genes);
+        long headerSize = 4 + 4 + 8 + 8 + 4 + 4 + 8L * genes;
+        for (int i = 0; i < genes; i++) {
+            byte[] name = table.name(i).getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            headerSize += 4 + name.length;
+        }
+
+        long[] offsets = new long[genes];
+        long offset = align(headerSize);
+        for (int i = 0; i < genes; i++) {
+            if (table.column(i).size() != m) {
+                throw new IllegalArgumentException("Columns have different number of observations");
+            }
+            offsets[i] = offset;
+            offset = align(offset + 8L * m + 4L * m + 4 + 4L * table.column(i).uniqCount());
+        }
+
+        // a unique temporary file keeps concurrent runs from writing into the same one
+        File tmp = File.createTempFile(cache.getName(), ".tmp", cache.getAbsoluteFile().getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            out.writeInt(genes);
+            out.writeInt(m);
+            for (byte[] name : names) {
+                out.writeInt(name.length);
+                out.write(name);
+            }
+            for (long o : offsets) {
+                out.writeLong(o);
+            }
+            long written = headerSize;
+            for (int i = 0; i < genes; i++) {
+                for (; written < offsets[i]; written++) {
+                    out.writeByte(0);
+                }
+                ExpressionColumn column = table.column(i);
+                for (int j = 0; j < m; j++) {
+                    out.writeDouble(column.value(j));
+                }
+                for (int j = 0; j < m; j++) {
+                    out.writeInt(column.orderedObs(j));
+                }
+                out.writeInt(column.uniqCount());
+                for (int j = 0; j < column.uniqCount(); j++) {
+                    out.writeInt(column.uniqEnd(j));
+                }
+                written += 8L * m + 4L * m + 4 + 4L * column.uniqCount();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+        Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the cached table or null if the cache was built from a different version of the source
+     */
+    public static ExpressionTable read(File cache, File source) throws IOException {
+        try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Expression cache is too large to be mapped: " + cache);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not an expression cache: " + cache);
+            }
+            long sourceSize = buffer.getLong();
+            long sourceModified = buffer.getLong();
+            if (source != null && (sourceSize != source.length() || sourceModified != source.lastModified())) {
+                return null;
+            }
+            int genes = buffer.getInt();
+            int m = buffer.getInt();
+            List<String> names = new ArrayList<>(genes);
+            for (int i = 0; i < genes; i++) {
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                names.add(new String(name, StandardCharsets.UTF_8));
+            }
+            long[] offsets = new long[genes];
+            for (int i = 0; i < genes; i++) {
+                offsets[i] = buffer.getLong();
+            }
+            List<ExpressionColumn> columns = IntStream.range(0, genes).parallel()
+                    .mapToObj(i -> readColumn(buffer.duplicate(), (int) offsets[i], m))
+                    .collect(Collectors.toList());
+            return new ExpressionTable(names, columns);
+        }
+    }
+
+    // columns are views of the mapped file, nothing is copied to the heap
+    private static ExpressionColumn readColumn(ByteBuffer buffer, int offset, int m) {
+        buffer.position(offset);
+        DoubleBuffer values = buffer.asDoubleBuffer().limit(m);
+        buffer.position(offset + 8 * m);
+        IntBuffer orderedObs = buffer.asIntBuffer().limit(m);
+        buffer.position(offset + 12 * m);
+        int uniqCount = buffer.getInt();
+        IntBuffer uniq = buffer.asIntBuffer().limit(uniqCount);
+        return new ExpressionColumn(values, orderedObs, uniq);
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
@@ -0,0 +1,260 @@
+package ctlab.mc5.io;
+
+import ctlab.mc5.bn.ExpressionColumn;
+import ctlab.mc5.bn.Variable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Gene expression table: a header line with gene names followed by whitespace separated values,
+ * read row by row. Line breaks inside the data are not significant, only the number of values is.
+ */
+public class ExpressionTable {
+    private static final int MIN_CHUNK = 1 << 16;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final List<String> names;
+    private final List<ExpressionColumn> columns;
+
+    public ExpressionTable(List<String> names, List<ExpressionColumn> columns) {
+        if (names.size() != columns.size()) {
+            throw new IllegalArgumentException("Number of names doesn't match the number of columns");
+        }
+        this.names = names;
+        this.columns = columns;
+    }
+
+    public int genes() {
+        return names.size();
+    }
+
+    public String name(int gene) {
+        return names.get(gene);
+    }
+
+    public ExpressionColumn column(int gene) {
+        return columns.get(gene);
+    }
+
+    public List<Variable> variables(int discClasses) {
+        List<Variable> res = new ArrayList<>(genes());
+        for (int i = 0; i < genes(); i++) {
+            res.add(new Variable(name(i), column(i), discClasses, i));
+        }
+        return res;
+    }
+
+    public static ExpressionTable read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Expression table is too large to be mapped: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return parse(buffer);
+        }
+    }
+
+    static ExpressionTable parse(ByteBuffer buffer) {
+        int size = buffer.limit();
+        if (size == 0) {
+            throw new NoSuchElementException("Expression table is empty");
+        }
+        int headerEnd = 0;
+        while (headerEnd < size && buffer.get(headerEnd) != '\n' && buffer.get(headerEnd) != '\r') {
+            headerEnd++;
+        }
+        byte[] header = new byte[headerEnd];
+        buffer.duplicate().position(0).get(header);
+        String headerLine = new String(header, StandardCharsets.UTF_8).trim();
+        List<String> names = headerLine.isEmpty() ? new ArrayList<>() : Arrays.asList(headerLine.split("\\s+"));
+        int n = names.size();
+
+        int[] bounds = chunks(buffer, headerEnd, size);
+        int chunks = bounds.length - 1;
+
+        // the first pass counts values so that every chunk knows which row it starts with
+        long[] offsets = new long[chunks + 1];
+        long[] counts = IntStream.range(0, chunks).parallel()
+                .mapToLong(c -> countTokens(buffer, bounds[c], bounds[c + 1]))
+                .toArray();
+        for (int c = 0; c < chunks; c++) {
+            offsets[c + 1] = offsets[c] + counts[c];
+        }
+        long total = offsets[chunks];
+        if (n == 0 ? total != 0 : total % n != 0) {
+            throw new InputMismatchException("Number of values " + total + " is not a multiple of " + n + " genes");
+        }
+        long rows = n == 0 ? 0 : total / n;
+        if (rows > Integer.MAX_VALUE) {
+            throw new InputMismatchException("Too many observations");
+        }
+
+        double[][] data = new double[n][(int) rows];
+        if (n > 0) {
+            IntStream.range(0, chunks).parallel()
+                    .forEach(c -> parseChunk(buffer, bounds[c], bounds[c + 1], offsets[c], data));
+        }
+
+        List<ExpressionColumn> columns = Arrays.stream(data).parallel()
+                .map(ExpressionColumn::new)
+                .collect(Collectors.toList());
+        return new ExpressionTable(new ArrayList<>(names), columns);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private static int[] chunks(ByteBuffer buffer, int from, int to) {
+        int parts = Math.max(1, Math.min(4 * Runtime.getRuntime().availableProcessors(), (to - from) / MIN_CHUNK));
+        int[] bounds = new int[parts + 1];
+        bounds[0] = from;
+        for (int i = 1; i < parts; i++) {
+            int pos = Math.max(bounds[i - 1], from + (int) ((long) (to - from) * i / parts));
+            while (pos < to && !isWhitespace(buffer.get(pos))) {
+                pos++;
+            }
+            bounds[i] = pos;
+        }
+        bounds[parts] = to;
+        return bounds;
+    }
+
+    private static long countTokens(ByteBuffer buffer, int from, int to) {
+        long count = 0;
+        boolean inToken = false;
+        for (int i = from; i < to; i++) {
+            boolean ws = isWhitespace(buffer.get(i));
+            if (!ws && !inToken) {
+                count++;
+            }
+            inToken = !ws;
+        }
+        return count;
+    }
+
+    private static void parseChunk(ByteBuffer buffer, int from, int to, long firstToken, double[][] data) {
+        int n = data.length;
+        int row = (int) (firstToken / n);
+        int col = (int) (firstToken % n);
+        int i = from;
+        while (true) {
+            while (i < to && isWhitespace(buffer.get(i))) {
+                i++;
+            }
+            if (i == to) {
+                return;
+            }
+            int start = i;
+            while (i < to && !isWhitespace(buffer.get(i))) {
+                i++;
+            }
+            data[col][row] = parseDouble(buffer, start, i);
+            if (++col == n) {
+                col = 0;
+                row++;
+            }
+        }
+    }
+
+    /**
+     * Parses a decimal number without allocation when it is exactly representable by a single
+     * multiplication or division of its mantissa by a power of ten; falls back to {@link Double#parseDouble} otherwise.
+     */
+    static double parseDouble(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean overflow = false;
+        while (i < to && isDigit(buffer.get(i))) {
+            if (mantissa < MAX_EXACT_MANTISSA) {
+                mantissa = mantissa * 10 + (buffer.get(i) - '0');
+            } else {
+                overflow = true;
+            }
+            digits++;
+            i++;
+        }
+        if (i < to && buffer.get(i) == '.') {
+            i++;
+            while (i < to && isDigit(buffer.get(i))) {
+                if (mantissa < MAX_EXACT_MANTISSA) {
+                    mantissa = mantissa * 10 + (buffer.get(i) - '0');
+                    exponent--;
+                } else {
+                    overflow = true;
+                }
+                digits++;
+                i++;
+            }
+        }
+        if (digits > 0 && i < to && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExp = buffer.get(i) == '-';
+                i++;
+            }
+            int expStart = i;
+            int exp = 0;
+            while (i < to && isDigit(buffer.get(i))) {
+                exp = Math.min(exp * 10 + (buffer.get(i) - '0'), 10_000);
+                i++;
+            }
+            if (i == expStart) {
+                return slowParse(buffer, from, to);
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (i != to || digits == 0 || overflow || mantissa > MAX_EXACT_MANTISSA) {
+            return slowParse(buffer, from, to);
+        }
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (exponent >= 0 && exponent < POW10.length) {
+            value = mantissa * POW10[exponent];
+        } else if (exponent < 0 && -exponent < POW10.length) {
+            value = mantissa / POW10[-exponent];
+        } else {
+            return slowParse(buffer, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static double slowParse(ByteBuffer buffer, int from, int to) {
+        byte[] token = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            token[i - from] = buffer.get(i);
+        }
+        String s = new String(token, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw new InputMismatchException("Not a number: " + s);
+        }
+    }
+}
@@ -1,24 +1,25 @@
 package ctlab.mc5.mcmc;
 
+import ctlab.mc5.bn.ParentSet;
 import ctlab.mc5.bn.action.Multinomial;
 
 import java.util.*;
 import java.util.function.Function;
 
 class Cache {
-    private Map<List<Integer>, LinkedList.Entry> cacheMap;
-    private Function<List<Integer>, Multinomial> spark;
+    private Map<ParentSet, LinkedList.Entry> cacheMap;
+    private Function<ParentSet, Multinomial> spark;
     private LinkedList queue;
     private int capacity;
 
-    Cache(int nCachedStates, Function<List<Integer>, Multinomial> multinomialSpark) {
+    Cache(int nCachedStates, Function<ParentSet, Multinomial> multinomialSpark) {
         cacheMap = new HashMap<>();
         spark = multinomialSpark;
         capacity = nCachedStates;
         queue = new LinkedList();
     }
 
-    Multinomial request(List<Integer> ps) {
+    Multinomial request(ParentSet ps) {
         LinkedList.Entry entry = cacheMap.get(ps);
         Multinomial mult;
         if (entry != null) {
@@ -41,7 +42,7 @@ class Cache {
         private Entry first;
         private int size;
 
-        Entry push(Multinomial mult, List<Integer> ps) {
+        Entry push(Multinomial mult, ParentSet ps) {
             Entry e;
             if (first != null) {
                 e = new Entry(mult, ps, first.left, first.right);
@@ -67,11 +68,11 @@ class Cache {
 
         class Entry {
             private Multinomial multinomial;
-            private List<Integer> ps;
+            private ParentSet ps;
             private Entry left;
             private Entry right;
 
-            private Entry(Multinomial m, List<Integer> ps, Entry left, Entry right) {
+            private Entry(Multinomial m, ParentSet ps, Entry left, Entry right) {
                 this.multinomial = m;
                 this.ps = ps;
                 this.left = left != null ? left : this;
@@ -0,0 +1,176 @@
+package ctlab.mc5.mcmc;
+
+import java.util.Arrays;
+
+/**
+ * Number of steps every edge has been present for. The network may be replaced as a whole, e.g. by a swap
+ * with another chain: that starts a new epoch, and edges still present at the end of an epoch are closed lazily
+ * on their next use, so a replacement costs O(1).
+ */
+class EdgeOccupancy {
+    private static final long EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] counter;
+    private long[] time;
+    private int[] epoch;
+    private boolean[] present;
+    private int size;
+    // start of the current epoch, an edge first seen disappearing is counted as present since then
+    private long origin;
+    private int currentEpoch;
+    private long[] epochEnds = new long[INITIAL_CAPACITY];
+
+    EdgeOccupancy() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counter = new long[capacity];
+        time = new long[capacity];
+        epoch = new int[capacity];
+        present = new boolean[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private static long key(int from, int to) {
+        return ((long) from << 32) | to;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int pos = hash(key) & mask;
+        while (keys[pos] != EMPTY && keys[pos] != key) {
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    private int insert(long key) {
+        int pos = slot(key);
+        if (keys[pos] == EMPTY) {
+            if (2 * (size + 1) > keys.length) {
+                rehash();
+                pos = slot(key);
+            }
+            keys[pos] = key;
+            time[pos] = origin;
+            epoch[pos] = currentEpoch;
+            size++;
+        }
+        touch(pos);
+        return pos;
+    }
+
+    // brings an entry of an earlier epoch to the current one
+    private void touch(int pos) {
+        if (epoch[pos] == currentEpoch) {
+            return;
+        }
+        if (present[pos]) {
+            counter[pos] += epochEnds[epoch[pos]] - time[pos];
+            present[pos] = false;
+        }
+        time[pos] = origin;
+        epoch[pos] = currentEpoch;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        long[] oldCounter = counter;
+        long[] oldTime = time;
+        int[] oldEpoch = epoch;
+        boolean[] oldPresent = present;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int pos = slot(oldKeys[i]);
+                keys[pos] = oldKeys[i];
+                counter[pos] = oldCounter[i];
+                time[pos] = oldTime[i];
+                epoch[pos] = oldEpoch[i];
+                present[pos] = oldPresent[i];
+                size++;
+            }
+        }
+    }
+
+    void appeared(int from, int to, long steps) {
+        int pos = insert(key(from, to));
+        time[pos] = steps;
+        present[pos] = true;
+    }
+
+    void disappeared(int from, int to, long steps) {
+        int pos = insert(key(from, to));
+        counter[pos] += steps - time[pos];
+        present[pos] = false;
+    }
+
+    /**
+     * The network has been replaced by another one at the given step: edges of the old network stop being
+     * counted there, edges of the new one are counted as present since then unless recorded otherwise.
+     */
+    void replaced(long steps) {
+        if (currentEpoch == epochEnds.length) {
+            epochEnds = Arrays.copyOf(epochEnds, 2 * epochEnds.length);
+        }
+        epochEnds[currentEpoch++] = steps;
+        origin = steps;
+    }
+
+    boolean contains(int from, int to) {
+        return keys[slot(key(from, to))] != EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Start of the current epoch.
+     */
+    long origin() {
+        return origin;
+    }
+
+    void clear() {
+        clear(0);
+    }
+
+    /**
+     * Forgets all edges, an edge first seen disappearing is counted as present since {@code origin}.
+     */
+    void clear(long origin) {
+        this.origin = origin;
+        currentEpoch = 0;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Entries brought to the current epoch: counter of the steps before the last appearance and the step of it,
+     * or the start of the epoch if the edge hasn't appeared in the epoch.
+     */
+    void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                touch(i);
+                consumer.accept((int) (keys[i] >>> 32), (int) keys[i], counter[i], time[i]);
+            }
+        }
+    }
+
+    interface EntryConsumer {
+        void accept(int from, int to, long counter, long time);
+    }
+}
@@ -1,5 +1,6 @@
 package ctlab.mc5.mcmc;
 
+import ctlab.mc5.algo.SamplerType;
 import picocli.CommandLine.Option;
 
 public interface EstimatorParams {
@@ -23,8 +24,18 @@ public interface EstimatorParams {
     double deltaT();
     @Option(names = "--swap-period", defaultValue = "10000")
     long swapPeriod();
+    @Option(names = "--target-swap-acceptance", defaultValue = "0.0")
+    double targetSwapAcceptance();
+    @Option(names = "--swap-mode", defaultValue = "NETWORKS")
+    MetaModel.SwapMode swapMode();
+    @Option(names = "--async-swaps")
+    boolean asyncSwaps();
     @Option(names = {"-warmup", "-w"}, defaultValue = "0")
     long warmup();
     @Option(names = {"-mc"}, defaultValue = "0")
     int multipleCollectors();
+    @Option(names = "--transition-sampler", defaultValue = "SEGMENT_TREE")
+    SamplerType transitionSampler();
+    @Option(names = "--action-sampler", defaultValue = "SEGMENT_TREE")
+    SamplerType actionSampler();
 }
@@ -0,0 +1,83 @@
+package ctlab.mc5.mcmc;
+
+/**
+ * Swap statistics of adjacent chains and Robbins-Monro tuning of the gaps between their temperatures
+ * towards a target swap acceptance. Temperatures are {@code T_0 = 1} and {@code T_{i+1} = T_i + exp(s_i)},
+ * after every swap attempt of chains i and i + 1 the gap {@code s_i} grows if the swap was accepted
+ * more often than targeted and shrinks otherwise.
+ */
+class LadderTuner {
+    private static final double MIN_GAP = 0.05;
+    private static final double DECAY = 0.6;
+    // rebuilding the distributions of a chain is expensive, so the tuned ladder is published in steps
+    static final int APPLY_PERIOD = 16;
+
+    private final double target;
+    private final double[] logGaps;
+    private final long[] attempts;
+    private final long[] accepts;
+    private boolean frozen;
+    private long tuned;
+
+    /**
+     * @param target swap acceptance to tune towards, the ladder is never changed if it is 0
+     */
+    LadderTuner(double[] betas, double target) {
+        if (!(target >= 0 && target < 1)) {
+            throw new IllegalArgumentException("Target swap acceptance must be in [0, 1): " + target);
+        }
+        this.target = target;
+        int pairs = Math.max(betas.length - 1, 0);
+        logGaps = new double[pairs];
+        for (int i = 0; i < pairs; i++) {
+            logGaps[i] = Math.log(Math.max(1.0 / betas[i + 1] - 1.0 / betas[i], MIN_GAP));
+        }
+        attempts = new long[pairs];
+        accepts = new long[pairs];
+        frozen = target == 0;
+    }
+
+    boolean isTuning() {
+        return !frozen && logGaps.length > 0;
+    }
+
+    void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Records a swap attempt of chains {@code pair} and {@code pair + 1}.
+     *
+     * @return true if the ladder has been tuned {@link #APPLY_PERIOD} times since it was last reported changed
+     */
+    boolean record(int pair, boolean accepted) {
+        attempts[pair]++;
+        if (accepted) {
+            accepts[pair]++;
+        }
+        if (frozen) {
+            return false;
+        }
+        double rate = Math.pow(attempts[pair], -DECAY);
+        logGaps[pair] += rate * ((accepted ? 1 : 0) - target);
+        return ++tuned % APPLY_PERIOD == 0;
+    }
+
+    double[] betas() {
+        double[] betas = new double[logGaps.length + 1];
+        double t = 1.0;
+        betas[0] = 1.0;
+        for (int i = 0; i < logGaps.length; i++) {
+            t += Math.exp(logGaps[i]);
+            betas[i + 1] = 1.0 / t;
+        }
+        return betas;
+    }
+
+    /**
+     * Fraction of accepted swaps of chains {@code pair} and {@code pair + 1}, NaN if there were no attempts.
+     */
+    double acceptance(int pair) {
+        return attempts[pair] == 0 ? Double.NaN : accepts[pair] / (double) attempts[pair];
+    }
+}
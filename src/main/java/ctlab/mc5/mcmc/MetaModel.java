@@ -1,76 +1,399 @@
 package ctlab.mc5.mcmc;
 
-import ctlab.mc5.Main;
-
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Parallel tempering over chains at different temperatures. Between swap attempts every chain
+ * runs on its own thread, the first chain is the coldest one and provides the results.
+ * Swaps are proposed between chains adjacent in temperature.
+ */
 public class MetaModel {
+    /**
+     * What an accepted swap exchanges between two chains.
+     */
+    public enum SwapMode {
+        /**
+         * Networks move between chains, every chain keeps its temperature.
+         */
+        NETWORKS,
+        /**
+         * Chains exchange temperatures and keep their networks. Results are collected from
+         * whichever chain is the cold one at the moment.
+         */
+        TEMPERATURES
+    }
+
     private List<Model> models;
     private SplittableRandom random;
     final private NetworkEstimator.Int modelCounter;
+    private LadderTuner ladder;
+    private SwapMode swapMode = SwapMode.NETWORKS;
+    private boolean asynchronous;
+    // results of the chains that were cold before the current one, temperature swaps only
+    private EdgeList collected;
 
     public MetaModel(List<Model> models, SplittableRandom random, NetworkEstimator.Int mc) {
         modelCounter = mc;
         this.models = models;
-        this.models.sort(Comparator.comparingDouble(Model::beta));
+        this.models.sort(Comparator.comparingDouble(Model::beta).reversed());
         this.random = random;
+        setTargetAcceptance(0);
+    }
+
+    /**
+     * Makes the temperatures of the chains adapt during warmup so that adjacent chains swap with
+     * the given probability, the ladder is frozen when sampling starts. 0 keeps the ladder fixed.
+     */
+    public void setTargetAcceptance(double target) {
+        double[] betas = models.stream().mapToDouble(Model::beta).toArray();
+        ladder = new LadderTuner(betas, target);
+        if (ladder.isTuning()) {
+            // the tuner may have widened too narrow gaps, chains must start at the ladder it tunes
+            applyLadder();
+        }
+    }
+
+    public void setSwapMode(SwapMode swapMode) {
+        this.swapMode = swapMode;
+    }
+
+    /**
+     * Lets chains run without a common barrier after warmup, see {@link #runAsynchronously}.
+     */
+    public void setAsynchronous(boolean asynchronous) {
+        this.asynchronous = asynchronous;
+    }
+
+    LadderTuner ladder() {
+        return ladder;
+    }
+
+    /**
+     * Inverse temperatures {@code 1 / (1 + i * deltaT)} of chains {@code i = 0..chains-1}.
+     */
+    public static double[] temperatureLadder(int chains, double deltaT) {
+        if (chains < 1 || deltaT < 0 || Double.isNaN(deltaT)) {
+            throw new IllegalArgumentException("Invalid temperature ladder: " + chains + " chains, delta " + deltaT);
+        }
+        double[] betas = new double[chains];
+        for (int i = 0; i < chains; i++) {
+            betas[i] = 1.0 / (1.0 + i * deltaT);
+        }
+        return betas;
+    }
+
+    /**
+     * Logarithm of the probability to accept the exchange of networks between two chains.
+     * Discretizations are exchanged along with networks, so no rescoring is needed.
+     */
+    static double swapAcceptance(Model a, Model b) {
+        return (a.beta() - b.beta()) * (b.logLikelihood() - a.logLikelihood());
+    }
+
+    /**
+     * Exchanges temperatures of chains {@code i} and {@code i + 1} and their places in the list,
+     * so that the list stays ordered from cold to hot.
+     */
+    private void swapTemperatures(int i, boolean sampling) {
+        Model colder = models.get(i);
+        Model hotter = models.get(i + 1);
+        double beta = colder.beta();
+        colder.setBeta(hotter.beta());
+        hotter.setBeta(beta);
+        models.set(i, hotter);
+        models.set(i + 1, colder);
+        if (i == 0 && sampling && !colder.isRaw()) {
+            EdgeList results = colder.results();
+            collected = collected == null ? results : collected.merge(results);
+            hotter.restartSampling();
+        }
+    }
+
+    private void advance(ExecutorService pool, List<Callable<Void>> chains) throws InterruptedException {
+        if (pool == null) {
+            for (Callable<Void> chain : chains) {
+                try {
+                    chain.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return;
+        }
+        for (Future<Void> f : pool.invokeAll(chains)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Chain failed", e.getCause());
+            }
+        }
     }
 
     public EdgeList run(long swapPeriod, long coldChainSteps, long warmup, double powerBase) throws InterruptedException {
+        ExecutorService pool = models.size() > 1 ? Executors.newFixedThreadPool(models.size()) : null;
+        try {
+            return run(pool, swapPeriod, coldChainSteps, warmup, powerBase);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private EdgeList run(ExecutorService pool, long swapPeriod, long coldChainSteps, long warmup, double powerBase)
+            throws InterruptedException {
         long targetSteps = 0;
+        collected = null;
+
+        List<Callable<Void>> chains = new ArrayList<>(models.size());
+        if (ladder.isTuning()) {
+            while (targetSteps < warmup) {
+                targetSteps = Math.min(targetSteps + swapPeriod, warmup);
+                long currentTarget = targetSteps;
+                chains.clear();
+                for (Model model : models) {
+                    chains.add(() -> {
+                        while (!model.step(currentTarget)) {}
+                        return null;
+                    });
+                }
+                advance(pool, chains);
+                trySwap(false);
+            }
+            ladder.freeze();
+            applyLadder();
+        }
+        chains.clear();
+        for (Model model : models) {
+            chains.add(() -> {
+                while (!model.step(warmup)) {}
+                model.finish_warmup();
+                return null;
+            });
+        }
+        advance(pool, chains);
 
+        // every chain counts the steps it was asked for on its own clock, so that it keeps its pace
+        // when it moves to another place of the ladder and steps skipped at the end of a period are not lost
+        Map<Model, long[]> clocks = new IdentityHashMap<>();
         for (Model model : models) {
-            while (!model.step(warmup)) {}
-            model.finish_warmup();
+            clocks.put(model, new long[1]);
+        }
+
+        if (asynchronous && pool != null) {
+            runAsynchronously(pool, clocks, swapPeriod, coldChainSteps, powerBase);
+            return finish();
         }
 
+        long coldSteps = 0;
         while (true) {
             if (Thread.currentThread().isInterrupted()) {
                 throw new InterruptedException();
             }
 
-            targetSteps += swapPeriod;
-            targetSteps = Math.min(targetSteps, coldChainSteps);
-
+            long coldPeriod = Math.min(swapPeriod, coldChainSteps - coldSteps);
+            chains.clear();
             for (int i = 0; i < models.size(); i++) {
-                long currentTarget = (long) (targetSteps / Math.pow(powerBase, i));
-                while (!models.get(i).step(currentTarget)) {
-                }
+                Model model = models.get(i);
+                long[] clock = clocks.get(model);
+                clock[0] += i == 0 ? coldPeriod : period(swapPeriod, powerBase, i);
+                long currentTarget = clock[0];
+                chains.add(() -> {
+                    while (!model.step(currentTarget)) {}
+                    return null;
+                });
             }
+            advance(pool, chains);
 
-            if (targetSteps == coldChainSteps) {
-                if (Math.abs(models.get(0).computeLogLikelihood() - models.get(0).logLikelihood()) >= 0.1) {
-                    System.err.println(models.get(0).computeLogLikelihood());
-                    System.err.println(models.get(0).logLikelihood());
-                    System.err.println("lls dont match");
-                }
-                synchronized (modelCounter) {
-                    modelCounter.inc();
-                    System.err.print("\rIteration: " + modelCounter.count.get());
-                }
-                return models.get(0).results();
+            coldSteps += coldPeriod;
+            if (coldSteps == coldChainSteps) {
+                return finish();
             }
-            if (models.size() > 1) {
-                int i = random.nextInt(models.size());
-                int j = random.nextInt(models.size() - 1);
-                if (j >= i) {
-                    ++j;
-                }
+            trySwap(true);
+        }
+    }
 
-                double iLL = models.get(i).logLikelihood();
-                double jLL = models.get(j).logLikelihood();
-                double iBeta = models.get(i).beta();
-                double jBeta = models.get(j).beta();
+    /**
+     * Steps made between swap attempts by the chain at the given place of the ladder.
+     */
+    private static long period(long swapPeriod, double powerBase, int place) {
+        return Math.max(1, (long) (swapPeriod / Math.pow(powerBase, place)));
+    }
+
+    private EdgeList finish() {
+        if (Math.abs(models.get(0).computeLogLikelihood() - models.get(0).logLikelihood()) >= 0.1) {
+            System.err.println(models.get(0).computeLogLikelihood());
+            System.err.println(models.get(0).logLikelihood());
+            System.err.println("lls dont match");
+        }
+        synchronized (modelCounter) {
+            modelCounter.inc();
+            System.err.print("\rIteration: " + modelCounter.count.get());
+        }
+        EdgeList results = models.get(0).results();
+        return collected == null ? results : collected.merge(results);
+    }
 
-                double acceptLL = iBeta * (jLL - iLL) + jBeta * (iLL - jLL);
-                if (Math.log(random.nextDouble()) < acceptLL) {
-                    Model.swapNetworks(models.get(i), models.get(j));
+    private void trySwap(boolean sampling) {
+        if (models.size() < 2) {
+            return;
+        }
+        attemptSwap(random.nextInt(models.size() - 1), random, sampling);
+    }
+
+    /**
+     * Metropolis step exchanging chains {@code i} and {@code i + 1}, neither of them may be running.
+     */
+    private void attemptSwap(int i, SplittableRandom random, boolean sampling) {
+        boolean accepted = Math.log(random.nextDouble()) < swapAcceptance(models.get(i), models.get(i + 1));
+        if (accepted) {
+            if (swapMode == SwapMode.TEMPERATURES) {
+                swapTemperatures(i, sampling);
+            } else {
+                Model.swapNetworks(models.get(i), models.get(i + 1));
+            }
+        }
+        if (ladder.record(i, accepted)) {
+            applyLadder();
+        }
+    }
+
+    // chains whose temperature has not changed keep their distributions, see Model#setBeta
+    private void applyLadder() {
+        double[] betas = ladder.betas();
+        for (int k = 0; k < models.size(); k++) {
+            models.get(k).setBeta(betas[k]);
+        }
+    }
+
+    private static final int RUNNING = 0;
+    private static final int WAITING = 1;
+    private static final int CLAIMED = 2;
+    private static final double WAIT_FRACTION = 0.1;
+    private static final long MIN_PARK_NANOS = 10_000;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    /**
+     * Runs every chain on its own thread without a common barrier. Chain i stops every
+     * {@code swapPeriod / powerBase^i} steps and publishes that it is waiting, then tries to claim a random
+     * neighbour that is waiting too and, if both claims succeed, attempts to swap with it. Otherwise it parks
+     * for up to a tenth of its last period until a neighbour claims and releases it, and goes on.
+     * Whether a swap is attempted depends on timing only, the acceptance is the usual Metropolis one.
+     * Sampling ends when the cold place of the ladder has made {@code coldChainSteps} steps.
+     *
+     * <p>Chains are claimed by compare-and-set, so a chain takes part in at most one swap at a time and is
+     * never changed while it runs. The claimer writes both chains, their places in {@link #models} and the
+     * statistics of their pair in {@link #ladder} and only then releases them with a volatile write of their states,
+     * which the released threads read before touching their chains again: this is the happens-before edge that
+     * publishes a swap. Swaps of different pairs may run concurrently, they touch disjoint places and disjoint
+     * pair statistics; the ladder is frozen after warmup, so no swap changes it as a whole. {@link #collected}
+     * is only written by swaps of the pair of places 0 and 1, which are serialized by the claims of place 0,
+     * and is read by {@link #finish()} after all threads have been joined.
+     */
+    private void runAsynchronously(ExecutorService pool, Map<Model, long[]> clocks, long swapPeriod,
+                                   long coldChainSteps, double powerBase) throws InterruptedException {
+        int size = models.size();
+        AtomicIntegerArray states = new AtomicIntegerArray(size);
+        // every slot is written by its own thread before the place is published as waiting
+        Thread[] threads = new Thread[size];
+        AtomicBoolean finished = new AtomicBoolean();
+        List<Callable<Void>> chains = new ArrayList<>(size);
+        for (int k = 0; k < size; k++) {
+            int place = k;
+            long period = period(swapPeriod, powerBase, k);
+            SplittableRandom chainRandom = random.split();
+            chains.add(() -> {
+                threads[place] = Thread.currentThread();
+                long coldSteps = 0;
+                while (!finished.get()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
+                    // the model at a place changes only while the place is claimed
+                    Model model = models.get(place);
+                    long[] clock = clocks.get(model);
+                    long steps = place == 0 ? Math.min(period, coldChainSteps - coldSteps) : period;
+                    clock[0] += steps;
+                    long target = clock[0];
+                    long startTime = System.nanoTime();
+                    while (!model.step(target)) {}
+                    long elapsed = System.nanoTime() - startTime;
+                    if (place == 0) {
+                        coldSteps += steps;
+                        if (coldSteps >= coldChainSteps) {
+                            finished.set(true);
+                            for (Thread thread : threads) {
+                                LockSupport.unpark(thread);
+                            }
+                            return null;
+                        }
+                    }
+                    meet(place, states, threads, finished, chainRandom, (long) (elapsed * WAIT_FRACTION));
+                }
+                return null;
+            });
+        }
+        advance(pool, chains);
+    }
+
+    private void meet(int place, AtomicIntegerArray states, Thread[] threads, AtomicBoolean finished,
+                      SplittableRandom random, long maxWait) {
+        states.set(place, WAITING);
+        int partner;
+        if (place == 0) {
+            partner = 1;
+        } else if (place == states.length() - 1) {
+            partner = place - 1;
+        } else {
+            partner = random.nextBoolean() ? place - 1 : place + 1;
+        }
+        if (states.compareAndSet(partner, WAITING, CLAIMED)) {
+            if (states.compareAndSet(place, WAITING, CLAIMED)) {
+                attemptSwap(Math.min(place, partner), random, true);
+                states.set(partner, RUNNING);
+                states.set(place, RUNNING);
+                LockSupport.unpark(threads[partner]);
+                return;
+            }
+            // this chain has just been claimed by its other neighbour
+            states.set(partner, WAITING);
+            LockSupport.unpark(threads[partner]);
+        }
+        long deadline = System.nanoTime() + maxWait;
+        long park = MIN_PARK_NANOS;
+        while (true) {
+            int state = states.get(place);
+            if (state == RUNNING) {
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (state == WAITING && (finished.get() || remaining <= 0)) {
+                if (states.compareAndSet(place, WAITING, RUNNING)) {
+                    return;
                 }
+                continue;
+            }
+            if (state == CLAIMED) {
+                // the claimer unparks this thread once it has released the place
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, Math.min(park, remaining));
+                park = Math.min(2 * park, MAX_PARK_NANOS);
             }
         }
     }
@@ -1,8 +1,11 @@
 package ctlab.mc5.mcmc;
 
-import ctlab.mc5.algo.SegmentTree;
+import ctlab.mc5.algo.Sampler;
+import ctlab.mc5.algo.SamplerType;
 import ctlab.mc5.bn.BayesianNetwork;
+import ctlab.mc5.bn.ParentSet;
 import ctlab.mc5.bn.Variable;
+import ctlab.mc5.bn.action.BatchLikelihood;
 import ctlab.mc5.bn.action.Multinomial;
 import ctlab.mc5.bn.action.MultinomialFactory;
 import ctlab.mc5.mcmc.EdgeList.Edge;
@@ -10,6 +13,7 @@ import org.apache.commons.math3.util.Pair;
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -24,9 +28,10 @@ public class Model {
     private List<Cache> caches;
     private int nCachedStates;
 
-    private final List<Multinomial> distributions;
+    private List<Multinomial> distributions;
     private final MultinomialFactory multFactory;
-    private SegmentTree transitions;
+    private Sampler transitions;
+    private SamplerType transitionSampler = SamplerType.SEGMENT_TREE;
 
     public BayesianNetwork getBn() {
         return oldBn;
@@ -40,8 +45,8 @@ public class Model {
     private final double initLL;
     private final double reverseLL;
 
-    private final long[][] counter;
-    private final long[][] time;
+    private final EdgeOccupancy occupancy;
+    private long sampleStart;
 
     private final boolean raw;
     private final List<List<Variable>> tf;
@@ -67,8 +72,7 @@ public class Model {
         this.permutation = IntStream.range(0, bn.size()).boxed().collect(Collectors.toList());
         this.beta = beta;
         this.n = bn.size();
-        counter = new long[n][n];
-        time = new long[n][n];
+        occupancy = new EdgeOccupancy();
         this.bn = bn;
         this.ll = new double[n];
         this.distributions = new ArrayList<>();
@@ -89,6 +93,13 @@ public class Model {
         multFactory.setRandomEngine(re);
     }
 
+    /**
+     * Sets how the node to be changed is chosen, takes effect on the next {@link #init}.
+     */
+    public void setTransitionSampler(SamplerType transitionSampler) {
+        this.transitionSampler = transitionSampler;
+    }
+
     private void calculateLikelihood() {
         loglik = 0.0;
         for (int i = 0; i < n; i++) {
@@ -119,20 +130,40 @@ public class Model {
         transitions.set(v, distributions.get(v).logLikelihood());
     }
 
-    private Function<List<Integer>, Multinomial> multinomials(int to_node) {
+    /**
+     * Distributions created by the returned function move between chains together with the network they
+     * were created for, see {@link #swapNetworks}, so the function captures the network, its scores and
+     * the factory, whose random source moves along, instead of reading them from the chain. Distributions are
+     * created at the temperature of this chain, {@link #updateDistribution} sets the one of the current chain.
+     */
+    private Function<ParentSet, Multinomial> multinomials(int to_node) {
+        BayesianNetwork bn = this.bn;
+        double[] ll = this.ll;
+        MultinomialFactory multFactory = this.multFactory;
+        // sources of the edges scored by a batch, shared by all distributions of the node
+        int[] froms = new int[tf.get(to_node).size()];
         return ps -> {
             double currLL = ll[to_node];
-            Function<Integer, Double> computeLL = i -> {
+            IntToDoubleFunction computeLL = action -> {
                 assert (currLL == ll[to_node]);
-                int mem = i;
-                i = toVarIdx(to_node, i);
+                int i = toVarIdx(to_node, action);
                 if (bn.edgeExists(i, to_node)) {
                     return bn.scoreExcluding(i, to_node) - currLL;
                 } else {
                     return bn.scoreIncluding(i, to_node) - currLL;
                 }
             };
-            return multFactory.spark(tf.get(to_node).size(), computeLL, initLL, beta);
+            BatchLikelihood batchLL = (from, count, out) -> {
+                assert (currLL == ll[to_node]);
+                for (int j = 0; j < count; j++) {
+                    froms[j] = toVarIdx(to_node, from + j);
+                }
+                bn.scoreCandidates(to_node, froms, count, out);
+                for (int j = 0; j < count; j++) {
+                    out[j] -= currLL;
+                }
+            };
+            return multFactory.spark(tf.get(to_node).size(), computeLL, batchLL, initLL, beta);
         };
     }
 
@@ -175,12 +206,10 @@ public class Model {
         }
         calculateLikelihood();
 
-        transitions = new SegmentTree(n);
+        transitions = transitionSampler.create(n);
         for (int i = 0; i < n; i++) {
             caches.add(new Cache(nCachedStates, multinomials(i)));
-            List<Integer> ps = bn.ingoingEdges(i);
-            Collections.sort(ps);
-            distributions.add(caches.get(i).request(ps));
+            distributions.add(caches.get(i).request(bn.parents(i)));
             transitions.set(i, distributions.get(i).logLikelihood());
         }
     }
@@ -206,7 +235,7 @@ public class Model {
     }
 
     private void fix_delete(int from, int to) {
-        counter[from][to] += steps - time[from][to];
+        occupancy.disappeared(from, to, steps);
     }
 
     private void reverse() {
@@ -238,10 +267,10 @@ public class Model {
             double scoreFRev = bn.getScoringFunction().score(fromVar, parentFrom, bn.size());
             double scoreTRev = bn.getScoringFunction().score(toVar, parentTo, bn.size());
             double systemLLRev = scoreFRev + scoreTRev;
-            if (Math.log(random.nextDouble()) < systemLLRev - systemLL) {
+            if (Math.log(random.nextDouble()) < beta * (systemLLRev - systemLL)) {
                 updateLL(to, scoreTRev - ll[to]);
                 updateLL(from, scoreFRev - ll[from]);
-                time[to][from] = steps;
+                occupancy.appeared(to, from, steps);
                 fix_delete(from, to);
             } else {
                 bn.removeEdge(to, from);
@@ -308,7 +337,7 @@ public class Model {
                 return steps == limit;
             }
             addEdge(parent, node, mult.getLastLL());
-            time[parent][node] = steps;
+            occupancy.appeared(parent, node, steps);
         }
         assert (Math.abs(computeLogLikelihood() - logLikelihood()) < 0.1);
         return steps == limit;
@@ -340,9 +369,9 @@ public class Model {
 
     private void updateDistribution(int to) {
         distributions.get(to).deactivate();
-        List<Integer> parentSet = bn.ingoingEdges(to);
-        Collections.sort(parentSet);
-        Multinomial mult = caches.get(to).request(parentSet);
+        Multinomial mult = caches.get(to).request(bn.parents(to));
+        // a cached distribution may have been built at the temperature of another chain
+        mult.setBeta(beta);
         distributions.set(to, mult);
         transitions.set(to, mult.logLikelihood());
     }
@@ -367,103 +396,124 @@ public class Model {
         updateDistribution(to);
     }
 
+    /**
+     * Exchanges the networks of two chains together with their discretizations, scores, distributions of
+     * actions and the random sources those draw from; the graphs themselves are not modified. Nothing is
+     * scored: distributions only have their temperature changed if the chains have different ones.
+     */
     public static void swapNetworks(Model model, Model other) {
-        List<Set<Integer>> modelAllEdges = new ArrayList<>();
-        List<Set<Integer>> otherModelAllEdges = new ArrayList<>();
-
-        for (int to = 0; to < model.bn.size(); to++) {
-            modelAllEdges.add(new LinkedHashSet<>(model.bn.ingoingEdges(to)));
-            otherModelAllEdges.add(new LinkedHashSet<>(other.bn.ingoingEdges(to)));
+        model.occupancy.replaced(model.steps);
+        other.occupancy.replaced(other.steps);
+        {
+            BayesianNetwork tmp = model.bn;
+            model.bn = other.bn;
+            other.bn = tmp;
+        }
+        {
+            double[] tmp = model.ll;
+            model.ll = other.ll;
+            other.ll = tmp;
+        }
+        {
+            double tmp = model.loglik;
+            model.loglik = other.loglik;
+            other.loglik = tmp;
         }
-
         {
             List<Cache> tmp = model.caches;
             model.caches = other.caches;
             other.caches = tmp;
         }
         {
-            List<Integer> tmpperm = model.permutation;
-            model.permutation = other.permutation;
-            other.permutation = tmpperm;
+            List<Multinomial> tmp = model.distributions;
+            model.distributions = other.distributions;
+            other.distributions = tmp;
         }
-
-//        {
-//            SegmentTree tmp1 = model.transitions;
-//            model.transitions = other.transitions;
-//            other.transitions = tmp1;
-//        }
-
-        for (int to = 0; to < model.bn.size(); to++) {
-            final int finalTo = to;
-            modelAllEdges.get(to)
-                    .forEach(from -> {
-                        model.bn.removeEdge(from, finalTo);
-                    });
-            otherModelAllEdges.get(to)
-                    .forEach(from -> {
-                        other.bn.removeEdge(from, finalTo);
-                    });
-//            model.updateDistribution(to);
-//            other.updateDistribution(to);
+        {
+            Sampler tmp = model.transitions;
+            model.transitions = other.transitions;
+            other.transitions = tmp;
         }
-
-
-        for (int to = 0; to < model.bn.size(); to++) {
-            final int finalTo = to;
-            modelAllEdges.get(to)
-                    .forEach(from -> {
-                        other.bn.addEdge(from, finalTo);
-                    });
-            otherModelAllEdges.get(to)
-                    .forEach(from -> {
-                        model.bn.addEdge(from, finalTo);
-                    });
-
-            double ll = model.ll[to];
-            model.ll[to] = other.ll[to];
-            other.ll[to] = ll;
-
-            model.updateDistribution(to);
-            other.updateDistribution(to);
+        {
+            SplittableRandom tmp = model.random;
+            model.random = other.random;
+            other.random = tmp;
         }
-        double ll = model.loglik;
-        model.loglik = other.loglik;
-        other.loglik = ll;
+        model.bn.setCallback(model::processPathElimination);
+        other.bn.setCallback(other::processPathElimination);
+        model.rescaleDistributions();
+        other.rescaleDistributions();
+    }
 
+    private void rescaleDistributions() {
+        for (int i = 0; i < n; i++) {
+            Multinomial distribution = distributions.get(i);
+            if (distribution.beta() != beta) {
+                distribution.setBeta(beta);
+                transitions.set(i, distribution.logLikelihood());
+            }
+        }
     }
 
     public double beta() {
         return beta;
     }
 
+    /**
+     * Changes the temperature of the chain. Current distributions are rescaled, cached ones when they are used.
+     */
+    public void setBeta(double beta) {
+        if (beta == this.beta) {
+            return;
+        }
+        this.beta = beta;
+        if (transitions == null) {
+            return;
+        }
+        rescaleDistributions();
+    }
+
     public void finish_warmup() {
         steps = 0;
-        for (int i = 0; i < n; ++i) {
-            for (int j = 0; j < n; ++j) {
-                counter[i][j] = 0;
-                time[i][j] = 0;
-            }
-        }
+        restartSampling();
+    }
+
+    /**
+     * Starts collecting {@link #results} anew from the current step, e.g. when the chain becomes the cold one.
+     */
+    void restartSampling() {
+        sampleStart = steps;
+        occupancy.clear(steps);
+    }
+
+    boolean isRaw() {
+        return raw;
     }
 
     public EdgeList results() {
-        EdgeList edgeList;
         if (raw) {
-            edgeList = edgeList();
-        } else {
-            edgeList = new EdgeList(steps);
-            for (int i = 0; i < n; ++i) {
-                for (int j = 0; j < n; j++) {
-                    long sum = counter[i][j];
-                    if (bn.edgeExists(i, j)) {
-                        sum += steps - time[i][j];
-                    }
-                    if (sum != 0) {
-                        edgeList.addEdge(new Edge(permutation.get(i), permutation.get(j), sum));
-                    }
+            return edgeList();
+        }
+        long sampled = steps - sampleStart;
+        EdgeList edgeList = new EdgeList(sampled);
+        occupancy.forEach((from, to, counter, time) -> {
+            long sum = counter;
+            if (bn.edgeExists(from, to)) {
+                sum += steps - time;
+            }
+            if (sum != 0) {
+                edgeList.addEdge(new Edge(permutation.get(from), permutation.get(to), sum));
+            }
+        });
+        // edges that have been present since the network was set or sampling started were never recorded
+        long unrecorded = steps - occupancy.origin();
+        for (int u = 0; u < n; u++) {
+            for (int v : bn.ingoingEdges(u)) {
+                if (unrecorded != 0 && !occupancy.contains(v, u)) {
+                    edgeList.addEdge(new Edge(permutation.get(v), permutation.get(u), unrecorded));
                 }
             }
         }
         return edgeList;
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package ctlab.mc5.mcmc;
 
+import ctlab.mc5.algo.SamplerType;
 import ctlab.mc5.bn.BayesianNetwork;
 import ctlab.mc5.bn.Variable;
 import ctlab.mc5.bn.action.MultinomialFactory;
@@ -82,6 +83,12 @@ public class NetworkEstimator {
         private final long warmup;
         private final double powerBase;
         private final List<List<Variable>> tf;
+        private double deltaT;
+        private double targetSwapAcceptance;
+        private MetaModel.SwapMode swapMode = MetaModel.SwapMode.NETWORKS;
+        private boolean asyncSwaps;
+        private SamplerType transitionSampler = SamplerType.SEGMENT_TREE;
+        private SamplerType actionSampler = SamplerType.SEGMENT_TREE;
 
         public Task(BayesianNetwork bn, Int mc, SplittableRandom rn, EstimatorParams params, List<List<Variable>> tf) {
             this(bn, mc, rn, params.chains(), params.batchSize(),
@@ -89,6 +96,9 @@ public class NetworkEstimator {
                     params.multipleCollectors(), params.swapPeriod(),
                     params.coldChainSteps(), params.warmup(),
                     params.powerBase(), tf);
+            setSamplers(params.transitionSampler(), params.actionSampler());
+            setLadder(params.deltaT(), params.targetSwapAcceptance());
+            setSwapMode(params.swapMode(), params.asyncSwaps());
         }
 
         public Task(BayesianNetwork bn, Int mc, SplittableRandom rn,
@@ -109,16 +119,41 @@ public class NetworkEstimator {
             this.tf = tf;
         }
 
+        /**
+         * Sets the initial temperature ladder of the chains, see {@link MetaModel#temperatureLadder},
+         * and the swap acceptance it is tuned towards during warmup, see {@link MetaModel#setTargetAcceptance}.
+         */
+        public void setLadder(double deltaT, double targetSwapAcceptance) {
+            this.deltaT = deltaT;
+            this.targetSwapAcceptance = targetSwapAcceptance;
+        }
+
+        public void setSwapMode(MetaModel.SwapMode swapMode, boolean asyncSwaps) {
+            this.swapMode = swapMode;
+            this.asyncSwaps = asyncSwaps;
+        }
+
+        public void setSamplers(SamplerType transitionSampler, SamplerType actionSampler) {
+            this.transitionSampler = transitionSampler;
+            this.actionSampler = actionSampler;
+        }
+
         private void init() {
             SplittableRandom random = re.split();
             List<Model> models = new ArrayList<>(chains);
+            double[] betas = MetaModel.temperatureLadder(chains, deltaT);
             for (int i = 0; i < chains; i++) {
                 MultinomialFactory mults = new MultinomialFactory(batchSize, mainCacheSize);
-                Model model = new Model(bn, mults, numberOfCachedStates, 1.0, multipleCollectors == 0, tf);
+                mults.setSamplerType(actionSampler);
+                Model model = new Model(bn, mults, numberOfCachedStates, betas[i], multipleCollectors == 0, tf);
+                model.setTransitionSampler(transitionSampler);
                 model.init(false, true);
                 models.add(model);
             }
             model = new MetaModel(models, random, mc);
+            model.setTargetAcceptance(targetSwapAcceptance);
+            model.setSwapMode(swapMode);
+            model.setAsynchronous(asyncSwaps);
             result = null;
         }
 
@@ -1,10 +1,12 @@
 package ctlab;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 import ctlab.mc5.algo.SegmentTree;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.SplittableRandom;
 
 public class SegmentTreeTest {
@@ -43,4 +45,25 @@ public class SegmentTreeTest {
         }
         assertEquals(-2000 + Math.log(5), tree.likelihood(), 0.1);
     }
+
+    @Test
+    public void operationsDontAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        int n = 1000;
+        SegmentTree tree = new SegmentTree(n);
+        SplittableRandom re = new SplittableRandom(1);
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        int checksum = 0;
+        for (int i = 0; i < 100000; i++) {
+            tree.set(re.nextInt(n), -re.nextDouble() * 100);
+            checksum += tree.randomChoice(re);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(checksum >= 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1 << 20);
+    }
 }
@@ -0,0 +1,99 @@
+package ctlab.mc5.algo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+public class SamplerTest {
+    private static double logSumExp(double[] lls, double beta) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double ll : lls) {
+            max = Math.max(max, Math.min(beta * ll, 0.0));
+        }
+        if (max == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        double sum = 0;
+        for (double ll : lls) {
+            sum += Math.exp(Math.min(beta * ll, 0.0) - max);
+        }
+        return max + Math.log(sum);
+    }
+
+    private static void checkFrequencies(Sampler sampler, double[] lls, double beta, SplittableRandom re) {
+        int samples = 200000;
+        int[] bins = new int[lls.length];
+        for (int i = 0; i < samples; i++) {
+            bins[sampler.randomChoice(re)]++;
+        }
+        double total = logSumExp(lls, beta);
+        for (int k = 0; k < lls.length; k++) {
+            double p = Math.exp(Math.min(beta * lls[k], 0.0) - total);
+            if (p == 0) {
+                Assert.assertEquals(0, bins[k]);
+            } else {
+                Assert.assertEquals(p, bins[k] / (double) samples, 5 * Math.sqrt(p / samples) + 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void matchesDistributionTest() {
+        for (SamplerType type : SamplerType.values()) {
+            for (double beta : new double[]{1.0, 0.5}) {
+                SplittableRandom re = new SplittableRandom(17);
+                int n = 13;
+                Sampler sampler = type.create(n, beta);
+                double[] lls = new double[n];
+                for (int k = 0; k < n; k++) {
+                    lls[k] = Double.NEGATIVE_INFINITY;
+                    Assert.assertEquals(Double.NEGATIVE_INFINITY, sampler.get(k), 0.0);
+                }
+                Assert.assertEquals(Double.NEGATIVE_INFINITY, sampler.likelihood(), 0.0);
+                for (int step = 0; step < 1000; step++) {
+                    int k = re.nextInt(n);
+                    int kind = re.nextInt(4);
+                    lls[k] = kind == 0 ? Double.NEGATIVE_INFINITY : kind == 1 ? 1 + re.nextDouble()
+                            : -re.nextDouble() * (kind == 2 ? 5 : 2000);
+                    sampler.set(k, lls[k]);
+                    Assert.assertEquals(lls[k], sampler.get(k), 0.0);
+                    double expected = logSumExp(lls, beta);
+                    if (expected == Double.NEGATIVE_INFINITY) {
+                        Assert.assertEquals(type.name(), expected, sampler.likelihood(), 0.0);
+                    } else {
+                        Assert.assertEquals(type.name(), expected, sampler.likelihood(), 1e-5);
+                    }
+                }
+                for (int k = 0; k < n; k++) {
+                    lls[k] = k % 3 == 0 ? Double.NEGATIVE_INFINITY : -0.3 * k;
+                    sampler.set(k, lls[k]);
+                }
+                checkFrequencies(sampler, lls, beta, re);
+            }
+        }
+    }
+
+    @Test
+    public void tinyWeightsTest() {
+        for (SamplerType type : SamplerType.values()) {
+            SplittableRandom re = new SplittableRandom(3);
+            Sampler sampler = type.create(10);
+            for (int k = 0; k < 10; k++) {
+                sampler.set(k, k % 2 == 0 ? 0 : -2000);
+            }
+            for (int k = 0; k < 10; k += 2) {
+                sampler.set(k, Double.NEGATIVE_INFINITY);
+            }
+            Assert.assertEquals(type.name(), -2000 + Math.log(5), sampler.likelihood(), 1e-5);
+            for (int i = 0; i < 1000; i++) {
+                Assert.assertEquals(1, sampler.randomChoice(re) % 2);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nanTest() {
+        SamplerType.FENWICK.create(3).set(1, Double.NaN);
+    }
+}
@@ -0,0 +1,35 @@
+package ctlab.mc5.bn;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class ExpressionColumnTest {
+    @Test
+    public void sortOrderTest() {
+        Random random = new Random(42);
+        for (int n = 1; n < 200; n++) {
+            // few distinct values to exercise ties
+            double[] values = random.ints(n, 0, 1 + n / 4).asDoubleStream().toArray();
+            int[] expected = IntStream.range(0, n)
+                    .boxed()
+                    .sorted(Comparator.comparingDouble(i -> values[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            ExpressionColumn column = new ExpressionColumn(values);
+            Assert.assertArrayEquals(expected, column.orderedObs());
+
+            long distinct = IntStream.range(0, n).mapToDouble(i -> values[i]).distinct().count();
+            Assert.assertEquals(distinct, column.uniqCount());
+            for (int i = 0; i < column.uniqCount(); i++) {
+                Assert.assertEquals(values[column.uniqObs(i)], column.uniqValue(i), 0.0);
+                if (i > 0) {
+                    Assert.assertTrue(column.uniqValue(i - 1) < column.uniqValue(i));
+                }
+            }
+        }
+    }
+}
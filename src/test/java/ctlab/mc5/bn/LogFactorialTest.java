@@ -0,0 +1,30 @@
+package ctlab.mc5.bn;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+public class LogFactorialTest {
+    private static final double EPS = 1e-9;
+
+    @Test
+    public void test() {
+        LogFactorial lf = new LogFactorial(10);
+        double expected = 0.0;
+        for (int n = 0; n < 5000; n++) {
+            if (n > 0) {
+                expected += Math.log(n);
+            }
+            Assert.assertEquals(expected, lf.value(n), EPS * Math.max(1.0, expected));
+        }
+    }
+
+    @Test
+    public void concurrentGrowthTest() {
+        LogFactorial lf = new LogFactorial();
+        LogFactorial reference = new LogFactorial(100_000);
+        IntStream.range(0, 100_000).parallel().forEach(n ->
+                Assert.assertEquals(reference.value(n), lf.value(n), 0.0));
+    }
+}
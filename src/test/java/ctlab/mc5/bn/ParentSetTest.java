@@ -0,0 +1,48 @@
+package ctlab.mc5.bn;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class ParentSetTest {
+    @Test
+    public void test() {
+        Random random = new Random(3);
+        TreeSet<Integer> expected = new TreeSet<>();
+        ParentSet set = ParentSet.EMPTY;
+        for (int t = 0; t < 2000; t++) {
+            int node = random.nextInt(100) * 650;
+            if (expected.contains(node)) {
+                expected.remove(node);
+                set = set.without(node);
+            } else {
+                expected.add(node);
+                set = set.with(node);
+            }
+            Assert.assertEquals(expected.size(), set.size());
+            int i = 0;
+            for (int e : expected) {
+                Assert.assertEquals(e, set.get(i++));
+            }
+            Assert.assertTrue(set.contains(node) == expected.contains(node));
+
+            List<Integer> shuffled = new ArrayList<>(expected);
+            Collections.shuffle(shuffled, random);
+            ParentSet other = ParentSet.of(shuffled);
+            Assert.assertEquals(other, set);
+            Assert.assertEquals(other.hash64(), set.hash64());
+            Assert.assertEquals(other.hashCode(), set.hashCode());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateTest() {
+        ParentSet.of(1, 2).with(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangeTest() {
+        ParentSet.of(ParentSet.MAX_NODE + 1);
+    }
+}
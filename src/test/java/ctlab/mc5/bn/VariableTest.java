@@ -0,0 +1,75 @@
+package ctlab.mc5.bn;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class VariableTest {
+    private static final int OBSERVATIONS = 500;
+
+    private static List<Variable> variables(Random random, int n, int classes) {
+        List<Variable> vars = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            List<Double> data = random.doubles(OBSERVATIONS).boxed().collect(Collectors.toList());
+            vars.add(new Variable("V" + i, data, classes, i));
+        }
+        return vars;
+    }
+
+    private static void assertPartition(int[] classes, int count, List<Variable> vars) {
+        int[] representative = new int[count];
+        boolean[] seen = new boolean[count];
+        for (int i = 0; i < classes.length; i++) {
+            int c = classes[i];
+            Assert.assertTrue(c >= 0 && c < count);
+            if (!seen[c]) {
+                seen[c] = true;
+                representative[c] = i;
+            }
+            for (Variable v : vars) {
+                Assert.assertEquals(v.discreteValue(representative[c]), v.discreteValue(i));
+            }
+        }
+        for (int i = 0; i < classes.length; i++) {
+            for (int j = 0; j < i; j++) {
+                if (classes[i] != classes[j]) {
+                    boolean differs = false;
+                    for (Variable v : vars) {
+                        differs |= v.discreteValue(i) != v.discreteValue(j);
+                    }
+                    Assert.assertTrue(differs);
+                }
+            }
+        }
+    }
+
+    private void check(int classes, int ub) {
+        Random random = new Random(42);
+        List<Variable> vars = variables(random, 5, classes);
+        for (Variable v : vars) {
+            v.setDiscLimits(1, ub);
+        }
+        Variable child = vars.get(0);
+        List<Variable> ps = vars.subList(1, vars.size());
+
+        Contingency c = child.mapObs(ps);
+        assertPartition(c.parentClasses(), c.parentClassCount(), ps);
+        List<Variable> all = new ArrayList<>(ps);
+        all.add(child);
+        assertPartition(c.allClasses(), c.allClassCount(), all);
+    }
+
+    @Test
+    public void directMappingTest() {
+        check(3, 3);
+    }
+
+    @Test
+    public void hashedMappingTest() {
+        check(3, 100);
+    }
+}
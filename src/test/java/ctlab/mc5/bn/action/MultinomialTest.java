@@ -4,7 +4,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.*;
-import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 import java.util.stream.Collectors;
 
 import static ctlab.Utils.binomialTest;
@@ -25,7 +25,7 @@ public class MultinomialTest {
     private double[] ps;
     private boolean[] disabled;
 
-    Function<Integer, Double> calcLL;
+    IntToDoubleFunction calcLL;
 
     public MultinomialTest() {
         init(NVARIABLES);
@@ -85,7 +85,7 @@ public class MultinomialTest {
         double[] lls = Arrays.stream(ps).map(Math::log).toArray();
         ps = Arrays.stream(ps).map(x -> Math.min(Math.pow(x, BETA), 1.0)).toArray();
 
-        Function<Integer, Double> calcLL = i -> lls[i];
+        IntToDoubleFunction calcLL = i -> lls[i];
 
         for (int bs = 1; bs <= NVARIABLES; bs++) {
             for (short cacheSize = 0; cacheSize <= NVARIABLES; cacheSize++) {
@@ -105,7 +105,7 @@ public class MultinomialTest {
             short var = (short)re.nextInt(NVARIABLES);
             if (!disabled[var]) {
                 ps[var] = 0.0;
-                multinomial.disableAction(var, calcLL.apply((int)var));
+                multinomial.disableAction(var, calcLL.applyAsDouble((int)var));
             } else {
                 ps[var] = psOriginal[var];
                 multinomial.reEnableAction(var);
@@ -150,7 +150,7 @@ public class MultinomialTest {
                                 mult.reEnableAction((short)toChange);
                             }  else {
                                 ps[toChange] = 0.0;
-                                mult.disableAction((short)toChange, calcLL.apply(toChange));
+                                mult.disableAction((short)toChange, calcLL.applyAsDouble(toChange));
                             }
                             disabled[toChange] = !disabled[toChange];
                         }
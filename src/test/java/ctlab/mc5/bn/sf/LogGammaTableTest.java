@@ -0,0 +1,38 @@
+package ctlab.mc5.bn.sf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.apache.commons.math3.special.Gamma.logGamma;
+
+public class LogGammaTableTest {
+    @Test
+    public void test() {
+        double alpha = 1.0 / 3;
+        double[] small = LogGammaTable.of(1, 3, 10);
+        Assert.assertTrue(small.length > 10);
+        Assert.assertSame(small, LogGammaTable.of(1, 3, 5));
+
+        double[] large = LogGammaTable.of(1, 3, 1000);
+        Assert.assertTrue(large.length > 1000);
+        for (int k = 0; k < large.length; k++) {
+            Assert.assertEquals(logGamma(k + alpha), large[k], 0.0);
+        }
+        Assert.assertSame(large, LogGammaTable.of(1, 3, 10));
+    }
+
+    @Test
+    public void boundedTest() {
+        Assert.assertNull(LogGammaTable.of(1, LogGammaTable.MAX_DIVISOR + 1, 10));
+        Assert.assertNull(LogGammaTable.of(1, 2, LogGammaTable.MAX_COUNT));
+        for (int iss = 1; iss <= 4; iss++) {
+            for (int divisor = 1; divisor <= LogGammaTable.MAX_DIVISOR; divisor++) {
+                double[] table = LogGammaTable.of(iss, divisor, 10);
+                if (table != null) {
+                    Assert.assertEquals(logGamma(7 + (double) iss / divisor), table[7], 0.0);
+                }
+            }
+        }
+        Assert.assertTrue(LogGammaTable.tables() <= LogGammaTable.MAX_TABLES);
+    }
+}
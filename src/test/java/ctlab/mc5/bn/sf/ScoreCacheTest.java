@@ -0,0 +1,113 @@
+package ctlab.mc5.bn.sf;
+
+import ctlab.mc5.bn.ParentSet;
+import ctlab.mc5.bn.Variable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ScoreCacheTest {
+    private static List<Variable> variables(int n, int m) {
+        Random random = new Random(1);
+        List<Variable> vars = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            List<Double> data = random.doubles(m).boxed().collect(Collectors.toList());
+            vars.add(new Variable("V" + i, data, 3, i));
+        }
+        return vars;
+    }
+
+    @Test
+    public void test() {
+        List<Variable> vars = variables(4, 50);
+        ScoreCache cache = new ScoreCache(1000);
+        ScoreCache.Key key = ScoreCache.key(vars.get(0), Arrays.asList(vars.get(1), vars.get(2)));
+        Assert.assertNull(cache.get(key));
+        cache.put(key, 1.5);
+        Assert.assertEquals(1.5, cache.get(ScoreCache.key(vars.get(0), Arrays.asList(vars.get(1), vars.get(2)))), 0.0);
+        Assert.assertNull(cache.get(ScoreCache.key(vars.get(0), Arrays.asList(vars.get(1), vars.get(3)))));
+        Assert.assertNull(cache.get(ScoreCache.key(vars.get(1), Arrays.asList(vars.get(0), vars.get(2)))));
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(3, cache.misses());
+
+        // another discretization of a parent is another family
+        List<Variable> other = variables(4, 50);
+        other.get(2).setDiscLimits(2, 2);
+        other.get(2).randomPolicy();
+        Assert.assertNotEquals(vars.get(2).discretizationVersion(), other.get(2).discretizationVersion());
+        Assert.assertNull(cache.get(ScoreCache.key(vars.get(0), Arrays.asList(vars.get(1), other.get(2)))));
+        Assert.assertEquals(vars.get(1).discretizationVersion(), other.get(1).discretizationVersion());
+    }
+
+    @Test
+    public void boundedTest() {
+        List<Variable> vars = variables(20, 10);
+        ScoreCache cache = new ScoreCache(64);
+        IntStream.range(0, 10_000).parallel().forEach(i -> {
+            Variable v = vars.get(i % 20);
+            List<Variable> ps = Collections.singletonList(vars.get((i / 20) % 20));
+            ScoreCache.Key key = ScoreCache.key(v, ps);
+            Double score = cache.get(key);
+            if (score == null) {
+                cache.put(key, i % 400);
+            } else {
+                Assert.assertEquals(i % 400, score, 0.0);
+            }
+        });
+        Assert.assertTrue(cache.size() <= 64 + 63);
+        Assert.assertEquals(10_000, cache.hits() + cache.misses());
+    }
+
+    @Test
+    public void sharedByCopiesTest() {
+        BDE sf = new BDE(1.0);
+        sf.init(10);
+        Assert.assertSame(sf.getCache(), sf.cp().getCache());
+    }
+
+    private static int hotHits(ScoreCache cache) {
+        int hot = 1000;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < hot; i++) {
+                ScoreCache.Key key = new ScoreCache.Key(i, ParentSet.EMPTY, 0);
+                if (cache.get(key) == null) {
+                    cache.put(key, i);
+                }
+            }
+        }
+        for (int i = hot; i < 100_000; i++) {
+            ScoreCache.Key key = new ScoreCache.Key(i, ParentSet.EMPTY, 0);
+            if (cache.get(key) == null) {
+                cache.put(key, i);
+            }
+        }
+        int hits = 0;
+        for (int i = 0; i < hot; i++) {
+            Double score = cache.get(new ScoreCache.Key(i, ParentSet.EMPTY, 0));
+            if (score != null) {
+                Assert.assertEquals(i, score, 0.0);
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Test
+    public void scanResistanceTest() {
+        Assert.assertTrue(hotHits(new ScoreCache(6400, ScoreCache.Policy.TINY_LFU)) > 900);
+        Assert.assertTrue(hotHits(new ScoreCache(6400, ScoreCache.Policy.LRU)) < 100);
+    }
+
+    @Test
+    public void budgetTest() {
+        ScoreCache cache = ScoreCache.withBudget(1L << 20, ScoreCache.Policy.TINY_LFU);
+        Assert.assertEquals((1 << 20) / ScoreCache.ENTRY_BYTES, cache.capacity());
+        for (int i = 0; i < 100_000; i++) {
+            cache.put(new ScoreCache.Key(i, ParentSet.EMPTY, 0), i);
+        }
+        Assert.assertTrue(cache.size() <= cache.capacity() + 64);
+    }
+}
@@ -0,0 +1,201 @@
+package ctlab.mc5.bn.sf;
+
+import ctlab.mc5.bn.Contingency;
+import ctlab.mc5.bn.LogFactorial;
+import ctlab.mc5.bn.ParentSet;
+import ctlab.mc5.bn.Variable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.apache.commons.math3.special.Gamma.logGamma;
+
+public class ScoringFunctionTest {
+    private static final int OBSERVATIONS = 300;
+    private static final int VARIABLES = 12;
+    private static final double EPS = 1e-8;
+
+    private static List<Variable> variables(Random random) {
+        List<Variable> vars = new ArrayList<>();
+        for (int i = 0; i < VARIABLES; i++) {
+            List<Double> data = random.doubles(OBSERVATIONS).boxed().collect(Collectors.toList());
+            vars.add(new Variable("V" + i, data, 2 + i % 3, i));
+        }
+        return vars;
+    }
+
+    private static int[][] occurrences(Variable v, List<Variable> ps) {
+        Contingency cls = v.mapObs(ps);
+        int[] occParent = new int[cls.parentClassCount()];
+        int[] occAll = new int[cls.allClassCount()];
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            occParent[cls.parentClasses()[i]]++;
+            occAll[cls.allClasses()[i]]++;
+        }
+        return new int[][]{occParent, occAll};
+    }
+
+    private static double referenceBDE(Variable v, List<Variable> ps, double iss) {
+        int[][] occ = occurrences(v, ps);
+        int numCls = occ[0].length;
+        double iss1 = iss / numCls;
+        double iss2 = iss / (numCls * v.cardinality());
+        double value = 0.0;
+        for (int c : occ[1]) {
+            value += logGamma(c + iss2) - logGamma(iss2);
+        }
+        for (int c : occ[0]) {
+            value += logGamma(iss1) - logGamma(c + iss1);
+        }
+        return value;
+    }
+
+    private static double referenceK2(Variable v, List<Variable> ps) {
+        LogFactorial lf = new LogFactorial();
+        int[][] occ = occurrences(v, ps);
+        int r = v.cardinality();
+        double value = 0.0;
+        for (int c : occ[1]) {
+            value += lf.value(c);
+        }
+        for (int c : occ[0]) {
+            value += lf.value(r - 1) - lf.value(c + r - 1);
+        }
+        return value;
+    }
+
+    private static double referenceIC(Variable v, List<Variable> ps, double beta) {
+        Contingency cls = v.mapObs(ps);
+        int[] parentCls = cls.parentClasses().clone();
+        int[] allCls = cls.allClasses().clone();
+        int[][] occ = occurrences(v, ps);
+        Map<Integer, Set<Integer>> corr = new HashMap<>();
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            corr.computeIfAbsent(parentCls[i], x -> new HashSet<>()).add(allCls[i]);
+        }
+        double value = 0.0;
+        for (Map.Entry<Integer, Set<Integer>> e : corr.entrySet()) {
+            for (int cl : e.getValue()) {
+                value += occ[1][cl] * Math.log((double) occ[1][cl] / occ[0][e.getKey()]);
+            }
+        }
+        return value - beta * (v.cardinality() - 1) * occ[0].length;
+    }
+
+    @Test
+    public void scoresMatchReferenceTest() {
+        Random random = new Random(42);
+        List<Variable> vars = variables(random);
+        BDE bde = new BDE(1.0);
+        K2 k2 = new K2();
+        InformationSF ic = new InformationSF(0.5);
+        for (ScoringFunction sf : Arrays.asList(bde, k2, ic)) {
+            sf.init(VARIABLES);
+        }
+        for (int t = 0; t < 500; t++) {
+            Variable v = vars.get(random.nextInt(VARIABLES));
+            List<Variable> ps = new ArrayList<>(vars);
+            ps.remove(v);
+            Collections.shuffle(ps, random);
+            ps = new ArrayList<>(ps.subList(0, random.nextInt(10)));
+            Collections.sort(ps);
+
+            Assert.assertEquals(referenceBDE(v, ps, 1.0), bde.score(v, new ArrayList<>(ps), VARIABLES), EPS);
+            Assert.assertEquals(referenceK2(v, ps), k2.score(v, new ArrayList<>(ps), VARIABLES), EPS);
+            Assert.assertEquals(referenceIC(v, ps, 0.5), ic.score(v, new ArrayList<>(ps), VARIABLES), EPS);
+        }
+    }
+
+    @Test
+    public void countingBackendsAgreeTest() {
+        Random random = new Random(7);
+        List<Variable> vars = variables(random);
+        BDE scalar = new BDE(1.0);
+        BDE columnar = new BDE(1.0);
+        scalar.setCountingBackend(CountingBackend.SCALAR);
+        columnar.setCountingBackend(CountingBackend.COLUMNAR);
+        for (int t = 0; t < 500; t++) {
+            Variable v = vars.get(random.nextInt(VARIABLES));
+            List<Variable> ps = new ArrayList<>(vars);
+            ps.remove(v);
+            Collections.shuffle(ps, random);
+            ps = new ArrayList<>(ps.subList(0, random.nextInt(10)));
+
+            ContingencyTable table = ScoringFunction.count(v, ps, CountingBackend.SCALAR);
+            int configurations = table.configurations();
+            int card = table.cardinality();
+            int[] parent = new int[configurations];
+            int[] joint = new int[configurations * card];
+            for (int cfg = 0; cfg < configurations; cfg++) {
+                parent[cfg] = table.parentCount(cfg);
+                for (int x = 0; x < card; x++) {
+                    joint[cfg * card + x] = table.jointCount(cfg, x);
+                }
+            }
+            double expected = scalar.score(table, v.cardinality());
+
+            table = ScoringFunction.count(v, ps, CountingBackend.COLUMNAR);
+            Assert.assertEquals(configurations, table.configurations());
+            for (int cfg = 0; cfg < configurations; cfg++) {
+                Assert.assertEquals(parent[cfg], table.parentCount(cfg));
+                for (int x = 0; x < card; x++) {
+                    Assert.assertEquals(joint[cfg * card + x], table.jointCount(cfg, x));
+                }
+            }
+            Assert.assertEquals(expected, columnar.score(table, v.cardinality()), 0.0);
+        }
+    }
+
+    @Test
+    public void candidatesMatchSingleScoresTest() {
+        Random random = new Random(11);
+        List<Variable> vars = variables(random);
+        for (ScoringFunction batch : Arrays.asList(new BDE(1.0), new K2(), new InformationSF(0.5))) {
+            ScoringFunction single = batch.cp_internal();
+            batch.init(VARIABLES);
+            single.init(VARIABLES);
+            for (int t = 0; t < 200; t++) {
+                int v = random.nextInt(VARIABLES);
+                List<Integer> ps = new ArrayList<>();
+                for (int i = 0; i < VARIABLES; i++) {
+                    if (i != v && random.nextInt(3) == 0) {
+                        ps.add(i);
+                    }
+                }
+                ParentSet set = ParentSet.of(ps);
+                int[] candidates = IntStream.range(0, VARIABLES).filter(i -> i != v).toArray();
+                double[] scores = new double[candidates.length];
+                batch.scoreCandidates(vars.get(v), set, candidates, vars, scores);
+                for (int i = 0; i < candidates.length; i++) {
+                    int c = candidates[i];
+                    ParentSet toggled = set.contains(c) ? set.without(c) : set.with(c);
+                    Assert.assertEquals(single.score(vars.get(v), toggled, vars), scores[i], 0.0);
+                }
+            }
+            Assert.assertTrue(batch.getCache().hits() > 0);
+        }
+    }
+
+    @Test
+    public void partitionTest() {
+        Random random = new Random(5);
+        List<Variable> vars = variables(random);
+        BDE sf = new BDE(1.0);
+        BDE single = new BDE(1.0);
+        sf.init(VARIABLES);
+        single.init(VARIABLES);
+        ParentSet ps = ParentSet.of(1, 4, 7);
+        ParentPartition partition = new ParentPartition(vars.get(0), ps, vars);
+        Assert.assertTrue(partition.isCurrent(ParentSet.of(7, 4, 1)));
+        Assert.assertFalse(partition.isCurrent(ps.without(4)));
+        Assert.assertEquals(single.score(vars.get(0), ps.with(2), vars), sf.scoreToggled(partition, 2), 0.0);
+        Assert.assertEquals(single.score(vars.get(0), ps.without(4), vars), sf.scoreToggled(partition, 4), 0.0);
+
+        vars.get(4).setDiscLimits(2, 2);
+        vars.get(4).randomPolicy();
+        Assert.assertFalse(partition.isCurrent(ps));
+    }
+}
@@ -1,5 +1,6 @@
 package ctlab.mc5.graph;
 
+import ctlab.mc5.bn.ParentSet;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -50,11 +51,20 @@ public class GraphTest {
 
     @Test
     public void test() {
+        test(Graph.Representation.DENSE);
+    }
+
+    @Test
+    public void sparseTest() {
+        test(Graph.Representation.SPARSE);
+    }
+
+    private void test(Graph.Representation representation) {
         Random random = new Random(0xC0FFEE);
         int n = TEST_SIZE;
 
         for (int t = 0; t < TEST_CASES; t++) {
-            Graph g = new Graph(TEST_SIZE);
+            Graph g = new Graph(TEST_SIZE, representation);
             ReferenceGraph rg = new ReferenceGraph(TEST_SIZE);
             int edges = 0;
             for (int i = 0; i < TEST_ACTIONS; i++) {
@@ -92,6 +102,7 @@ public class GraphTest {
                             }
                         }
                     }
+                    Assert.assertEquals(ParentSet.of(g.ingoingEdges(u)).hash64(), g.parentHash(u));
                     break;
                 }
             }
@@ -0,0 +1,39 @@
+package ctlab.mc5.graph;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IntHashTableTest {
+    @Test
+    public void randomOperationsTest() {
+        Random random = new Random(7);
+        IntIntHashMap counts = new IntIntHashMap(2);
+        IntObjectHashMap<Integer> objects = new IntObjectHashMap<>(2);
+        Map<Integer, Integer> expectedCounts = new HashMap<>();
+        Map<Integer, Integer> expectedObjects = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(200);
+            int delta = random.nextInt(3) - 1;
+            counts.add(key, delta);
+            expectedCounts.merge(key, delta, Integer::sum);
+            expectedCounts.remove(key, 0);
+            if (random.nextBoolean()) {
+                objects.put(key, i);
+                expectedObjects.put(key, i);
+            } else {
+                objects.remove(key);
+                expectedObjects.remove(key);
+            }
+        }
+        for (int key = 0; key < 200; key++) {
+            Assert.assertEquals((int) expectedCounts.getOrDefault(key, 0), counts.get(key));
+            Assert.assertEquals(expectedObjects.get(key), objects.get(key));
+        }
+        Assert.assertEquals(expectedCounts.size(), counts.size());
+        Assert.assertEquals(expectedObjects.size(), objects.size());
+    }
+}
@@ -0,0 +1,79 @@
+package ctlab.mc5.io;
+
+import ctlab.mc5.bn.ExpressionColumn;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.util.Random;
+
+public class ExpressionCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripTest() throws IOException, ClassNotFoundException {
+        Random random = new Random(42);
+        File source = folder.newFile("ge.tsv");
+        try (PrintWriter pw = new PrintWriter(source)) {
+            pw.println("A\tB\tC");
+            for (int i = 0; i < 101; i++) {
+                // rounded values to get ties
+                pw.println(random.nextInt(10) + "\t" + random.nextDouble() + "\t" + random.nextInt(3) / 2.0);
+            }
+        }
+        File cache = new File(folder.getRoot(), "ge.cache");
+
+        ExpressionTable parsed = ExpressionCache.load(source, cache);
+        Assert.assertTrue(cache.exists());
+        ExpressionTable cached = ExpressionCache.read(cache, source);
+        Assert.assertNotNull(cached);
+
+        Assert.assertEquals(parsed.genes(), cached.genes());
+        for (int i = 0; i < parsed.genes(); i++) {
+            Assert.assertEquals(parsed.name(i), cached.name(i));
+            ExpressionColumn expected = parsed.column(i);
+            ExpressionColumn actual = cached.column(i);
+            Assert.assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                Assert.assertEquals(expected.value(j), actual.value(j), 0.0);
+                Assert.assertEquals(expected.orderedObs(j), actual.orderedObs(j));
+            }
+            Assert.assertEquals(expected.uniqCount(), actual.uniqCount());
+            for (int j = 0; j < expected.uniqCount(); j++) {
+                Assert.assertEquals(expected.uniqEnd(j), actual.uniqEnd(j));
+                Assert.assertEquals(expected.uniqValue(j), actual.uniqValue(j), 0.0);
+            }
+        }
+
+        File[] files = folder.getRoot().listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(2, files.length);
+
+        // columns backed by the mapping are serialized by value
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(cached.column(1));
+        }
+        ExpressionColumn copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (ExpressionColumn) in.readObject();
+        }
+        for (int j = 0; j < copy.size(); j++) {
+            Assert.assertEquals(parsed.column(1).value(j), copy.value(j), 0.0);
+            Assert.assertEquals(parsed.column(1).orderedObs(j), copy.orderedObs(j));
+        }
+        Assert.assertEquals(parsed.column(1).uniqCount(), copy.uniqCount());
+
+        Assert.assertTrue(source.setLastModified(source.lastModified() - 10_000));
+        Assert.assertNull(ExpressionCache.read(cache, source));
+    }
+}
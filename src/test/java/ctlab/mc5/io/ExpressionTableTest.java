@@ -0,0 +1,71 @@
+package ctlab.mc5.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class ExpressionTableTest {
+    private static double parse(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        return ExpressionTable.parseDouble(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    @Test
+    public void parseDoubleTest() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double value = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+            String s = random.nextBoolean() ? Double.toString(value) : String.format(Locale.US, "%.7f", value);
+            Assert.assertEquals(s, Double.parseDouble(s), parse(s), 0.0);
+        }
+        for (String s : Arrays.asList("0", "-0", "+1", ".5", "5.", "1e5", "1E-5", "12345678901234567890",
+                "0.000000000000000000000000001", "1e400", "NaN", "-Infinity", "9007199254740993")) {
+            Assert.assertEquals(s, Double.parseDouble(s), parse(s), 0.0);
+        }
+    }
+
+    @Test(expected = InputMismatchException.class)
+    public void malformedTest() {
+        parse("1.2.3");
+    }
+
+    @Test
+    public void parseTableTest() {
+        Random random = new Random(42);
+        int genes = 7;
+        int rows = 20000;
+        double[][] expected = new double[genes][rows];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < genes; i++) {
+            sb.append(i == 0 ? "" : "\t").append("\"G").append(i).append("\"");
+        }
+        sb.append("\r\n");
+        for (int r = 0; r < rows; r++) {
+            for (int i = 0; i < genes; i++) {
+                expected[i][r] = random.nextDouble();
+                sb.append(i == 0 ? "" : "\t").append(expected[i][r]);
+            }
+            sb.append(r % 2 == 0 ? "\n" : "\r\n");
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        ExpressionTable table = ExpressionTable.parse(ByteBuffer.wrap(bytes));
+
+        Assert.assertEquals(genes, table.genes());
+        for (int i = 0; i < genes; i++) {
+            Assert.assertEquals("\"G" + i + "\"", table.name(i));
+            Assert.assertEquals(rows, table.column(i).size());
+            for (int r = 0; r < rows; r++) {
+                Assert.assertEquals(expected[i][r], table.column(i).value(r), 0.0);
+            }
+        }
+    }
+
+    @Test(expected = InputMismatchException.class)
+    public void incompleteRowTest() {
+        byte[] bytes = "A B\n1 2\n3\n".getBytes(StandardCharsets.US_ASCII);
+        ExpressionTable.parse(ByteBuffer.wrap(bytes));
+    }
+}
@@ -0,0 +1,95 @@
+package ctlab.mc5.mcmc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class EdgeOccupancyTest {
+    private static final int N = 64;
+
+    @Test
+    public void test() {
+        Random random = new Random(42);
+        EdgeOccupancy occupancy = new EdgeOccupancy();
+        long[][] counter = new long[N][N];
+        long[][] time = new long[N][N];
+        boolean[][] seen = new boolean[N][N];
+
+        for (long steps = 0; steps < 10000; steps++) {
+            int from = random.nextInt(N);
+            int to = random.nextInt(N);
+            if (random.nextBoolean()) {
+                occupancy.appeared(from, to, steps);
+                time[from][to] = steps;
+            } else {
+                occupancy.disappeared(from, to, steps);
+                counter[from][to] += steps - time[from][to];
+            }
+            seen[from][to] = true;
+        }
+
+        long[][] actualCounter = new long[N][N];
+        long[][] actualTime = new long[N][N];
+        occupancy.forEach((from, to, c, t) -> {
+            actualCounter[from][to] = c;
+            actualTime[from][to] = t;
+        });
+
+        int live = 0;
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                Assert.assertEquals(seen[i][j], occupancy.contains(i, j));
+                Assert.assertEquals(counter[i][j], actualCounter[i][j]);
+                Assert.assertEquals(time[i][j], actualTime[i][j]);
+                live += seen[i][j] ? 1 : 0;
+            }
+        }
+        Assert.assertEquals(live, occupancy.size());
+
+        occupancy.clear();
+        Assert.assertEquals(0, occupancy.size());
+        Assert.assertFalse(occupancy.contains(0, 0));
+    }
+
+    @Test
+    public void originTest() {
+        EdgeOccupancy occupancy = new EdgeOccupancy();
+        occupancy.clear(100);
+        occupancy.disappeared(1, 2, 130);
+        occupancy.appeared(2, 3, 140);
+        occupancy.disappeared(2, 3, 145);
+        long[] counter = new long[2];
+        occupancy.forEach((from, to, c, t) -> counter[from - 1] = c);
+        Assert.assertEquals(30, counter[0]);
+        Assert.assertEquals(5, counter[1]);
+    }
+
+    @Test
+    public void replacedTest() {
+        EdgeOccupancy occupancy = new EdgeOccupancy();
+        occupancy.clear(10);
+        occupancy.appeared(1, 2, 20);
+        occupancy.appeared(2, 3, 20);
+        occupancy.disappeared(2, 3, 25);
+        occupancy.replaced(50);
+        Assert.assertEquals(50, occupancy.origin());
+        // 3 -> 4 belongs to the new network and has been present since the replacement
+        occupancy.disappeared(3, 4, 70);
+        occupancy.appeared(1, 2, 80);
+        occupancy.replaced(90);
+        occupancy.appeared(2, 3, 95);
+        long[][] counter = new long[5][5];
+        long[][] time = new long[5][5];
+        occupancy.forEach((from, to, c, t) -> {
+            counter[from][to] = c;
+            time[from][to] = t;
+        });
+        Assert.assertEquals(30 + 10, counter[1][2]);
+        Assert.assertEquals(90, time[1][2]);
+        Assert.assertEquals(5, counter[2][3]);
+        Assert.assertEquals(95, time[2][3]);
+        Assert.assertEquals(20, counter[3][4]);
+        Assert.assertEquals(90, time[3][4]);
+    }
+}
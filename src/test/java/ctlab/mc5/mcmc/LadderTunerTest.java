@@ -0,0 +1,60 @@
+package ctlab.mc5.mcmc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+public class LadderTunerTest {
+    @Test
+    public void convergesToTargetTest() {
+        SplittableRandom re = new SplittableRandom(5);
+        double target = 0.23;
+        LadderTuner tuner = new LadderTuner(new double[]{1.0, 1.0, 1.0, 1.0}, target);
+        Assert.assertTrue(tuner.isTuning());
+        // swaps of chains at temperatures t and t + gap are accepted with probability exp(-2 * gap / t)
+        for (int step = 0; step < 200000; step++) {
+            double[] betas = tuner.betas();
+            int pair = re.nextInt(betas.length - 1);
+            double gap = 1 / betas[pair + 1] - 1 / betas[pair];
+            tuner.record(pair, re.nextDouble() < Math.exp(-2 * gap * betas[pair]));
+        }
+        tuner.freeze();
+        Assert.assertFalse(tuner.isTuning());
+
+        double[] betas = tuner.betas();
+        for (int pair = 0; pair < betas.length - 1; pair++) {
+            Assert.assertTrue(betas[pair + 1] < betas[pair]);
+            double gap = 1 / betas[pair + 1] - 1 / betas[pair];
+            Assert.assertEquals(target, Math.exp(-2 * gap * betas[pair]), 0.03);
+        }
+
+        Assert.assertFalse(tuner.record(0, true));
+        Assert.assertArrayEquals(betas, tuner.betas(), 0.0);
+    }
+
+    @Test
+    public void applyPeriodTest() {
+        LadderTuner tuner = new LadderTuner(new double[]{1.0, 0.5, 0.25}, 0.3);
+        int applied = 0;
+        for (int i = 0; i < 4 * LadderTuner.APPLY_PERIOD; i++) {
+            applied += tuner.record(i % 2, i % 3 == 0) ? 1 : 0;
+        }
+        Assert.assertEquals(4, applied);
+    }
+
+    @Test
+    public void fixedLadderTest() {
+        LadderTuner tuner = new LadderTuner(new double[]{1.0, 0.5}, 0);
+        Assert.assertFalse(tuner.isTuning());
+        Assert.assertTrue(Double.isNaN(tuner.acceptance(0)));
+        Assert.assertFalse(tuner.record(0, true));
+        Assert.assertFalse(tuner.record(0, false));
+        Assert.assertEquals(0.5, tuner.acceptance(0), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTargetTest() {
+        new LadderTuner(new double[]{1.0, 0.5}, 1.5);
+    }
+}
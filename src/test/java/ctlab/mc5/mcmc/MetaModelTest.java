@@ -0,0 +1,202 @@
+package ctlab.mc5.mcmc;
+
+import ctlab.mc5.bn.BayesianNetwork;
+import ctlab.mc5.bn.Variable;
+import ctlab.mc5.bn.action.MultinomialFactory;
+import ctlab.mc5.bn.sf.BDE;
+import ctlab.mc5.bn.sf.ScoreCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+public class MetaModelTest {
+    @Test
+    public void ladderTest() {
+        Assert.assertArrayEquals(new double[]{1.0, 1.0, 1.0}, MetaModel.temperatureLadder(3, 0.0), 0.0);
+        Assert.assertArrayEquals(new double[]{1.0, 1.0 / 1.5, 0.5}, MetaModel.temperatureLadder(3, 0.5), 1e-12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDeltaTest() {
+        MetaModel.temperatureLadder(2, -0.1);
+    }
+
+    @Test
+    public void parallelTemperingTest() throws InterruptedException {
+        run(0, MetaModel.SwapMode.NETWORKS, false);
+    }
+
+    @Test
+    public void adaptiveLadderTest() throws InterruptedException {
+        MetaModel meta = run(0.23, MetaModel.SwapMode.NETWORKS, false);
+        Assert.assertFalse(meta.ladder().isTuning());
+        // equal temperatures are spread to the minimal gap before the first swap
+        run(0.0, 0.23, MetaModel.SwapMode.NETWORKS, false);
+    }
+
+    @Test
+    public void temperatureSwapTest() throws InterruptedException {
+        run(0, MetaModel.SwapMode.TEMPERATURES, false);
+        run(0.23, MetaModel.SwapMode.TEMPERATURES, false);
+    }
+
+    @Test
+    public void asynchronousTest() throws InterruptedException {
+        for (MetaModel.SwapMode mode : MetaModel.SwapMode.values()) {
+            run(0, mode, true);
+        }
+    }
+
+    @Test
+    public void temperatureSwapPaceTest() throws InterruptedException {
+        BayesianNetwork bn = network();
+        // nearly equal temperatures make almost every swap accepted
+        double[] betas = MetaModel.temperatureLadder(3, 1e-6);
+        List<Model> models = new ArrayList<>();
+        SplittableRandom re = new SplittableRandom(2);
+        for (double beta : betas) {
+            Model model = new PacedModel(bn, beta);
+            model.setRandomGenerator(re.split());
+            model.init(false, true);
+            models.add(model);
+        }
+        List<Model> chains = new ArrayList<>(models);
+        MetaModel meta = new MetaModel(models, re.split(), new NetworkEstimator.Int());
+        meta.setSwapMode(MetaModel.SwapMode.TEMPERATURES);
+        meta.run(50, 2000, 100, 2.0);
+
+        Assert.assertTrue(meta.ladder().acceptance(0) > 0.5 && meta.ladder().acceptance(1) > 0.5);
+        for (Model model : chains) {
+            Assert.assertTrue(((PacedModel) model).paced);
+        }
+    }
+
+    /**
+     * Checks that every period asks the chain for steps it has not made yet, whatever place it has moved to.
+     */
+    private static class PacedModel extends Model {
+        private long lastLimit = -1;
+        private boolean paced = true;
+
+        PacedModel(BayesianNetwork bn, double beta) {
+            super(bn, new MultinomialFactory(10, 10), 10, beta, false);
+        }
+
+        @Override
+        public boolean step(long limit) {
+            if (limit != lastLimit) {
+                paced &= limit > getSteps();
+                lastLimit = limit;
+            }
+            return super.step(limit);
+        }
+    }
+
+    private static BayesianNetwork network() {
+        Random random = new Random(7);
+        int sampleSize = 50;
+        List<Variable> variables = new ArrayList<>();
+        // Model asserts that transition probabilities sum up to at most 1.01, which holds from 100 genes on
+        for (int i = 0; i < 100; i++) {
+            List<Double> data = random.doubles(sampleSize).boxed().collect(Collectors.toList());
+            variables.add(new Variable("V" + i, data, 3, i));
+        }
+        return new BayesianNetwork(variables, new BDE());
+    }
+
+    private static MetaModel run(double targetAcceptance, MetaModel.SwapMode mode, boolean asynchronous)
+            throws InterruptedException {
+        return run(0.5, targetAcceptance, mode, asynchronous);
+    }
+
+    private static MetaModel run(double deltaT, double targetAcceptance, MetaModel.SwapMode mode,
+                                 boolean asynchronous) throws InterruptedException {
+        BayesianNetwork bn = network();
+
+        double[] betas = MetaModel.temperatureLadder(4, deltaT);
+        List<Model> models = new ArrayList<>();
+        SplittableRandom re = new SplittableRandom(1);
+        for (double beta : betas) {
+            Model model = new Model(bn, new MultinomialFactory(10, 10), 10, beta, false);
+            model.setRandomGenerator(re.split());
+            model.init(false, true);
+            models.add(model);
+        }
+        List<Model> chains = new ArrayList<>(models);
+        MetaModel meta = new MetaModel(models, re.split(), new NetworkEstimator.Int());
+        meta.setTargetAcceptance(targetAcceptance);
+        if (targetAcceptance > 0) {
+            double[] initial = meta.ladder().betas();
+            for (int i = 0; i < models.size(); i++) {
+                Assert.assertEquals(initial[i], models.get(i).beta(), 0.0);
+            }
+        }
+        meta.setSwapMode(mode);
+        meta.setAsynchronous(asynchronous);
+        EdgeList result = meta.run(100, 1000, 500, 1.0);
+
+        Assert.assertNotNull(result);
+        // results are collected over the steps of the cold chain only, possibly from several chains
+        long sampled = result.get_number_merged();
+        Assert.assertTrue(sampled > 0 && sampled <= 1000);
+        for (EdgeList.Edge e : result.edges()) {
+            double p = e.p(sampled);
+            Assert.assertTrue(p > 0 && p <= 1);
+        }
+        double[] actual = meta.ladder().betas();
+        for (int i = 0; i < chains.size(); i++) {
+            Assert.assertEquals(targetAcceptance == 0 ? betas[i] : actual[i], models.get(i).beta(), 0.0);
+            if (i > 0) {
+                Assert.assertTrue(models.get(i).beta() < models.get(i - 1).beta());
+            }
+        }
+        for (Model model : chains) {
+            Assert.assertEquals(model.computeLogLikelihood(), model.logLikelihood(), 1e-6);
+        }
+        return meta;
+    }
+
+    @Test
+    public void swapTest() {
+        Random random = new Random(11);
+        List<Variable> variables = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            List<Double> data = random.doubles(200).boxed().collect(Collectors.toList());
+            variables.add(new Variable("V" + i, data, 3, i));
+        }
+        BayesianNetwork bn = new BayesianNetwork(variables, new BDE());
+        SplittableRandom re = new SplittableRandom(3);
+        Model cold = new Model(bn, new MultinomialFactory(2, 3), 10, 1.0, true);
+        Model hot = new Model(bn, new MultinomialFactory(2, 3), 10, 0.5, true);
+        cold.setRandomGenerator(re.split());
+        hot.setRandomGenerator(re.split());
+        cold.init(true, true);
+        hot.init(true, true);
+
+        boolean[][] coldEdges = cold.adjMatrix();
+        boolean[][] hotEdges = hot.adjMatrix();
+        double acceptance = MetaModel.swapAcceptance(cold, hot);
+        // every score computation goes through the shared score cache
+        ScoreCache scores = bn.getScoringFunction().getCache();
+        long lookups = scores.hits() + scores.misses();
+        Model.swapNetworks(cold, hot);
+        Assert.assertEquals(lookups, scores.hits() + scores.misses());
+
+        Assert.assertArrayEquals(hotEdges, cold.adjMatrix());
+        Assert.assertArrayEquals(coldEdges, hot.adjMatrix());
+        Assert.assertEquals(cold.computeLogLikelihood(), cold.logLikelihood(), 1e-6);
+        Assert.assertEquals(hot.computeLogLikelihood(), hot.logLikelihood(), 1e-6);
+        Assert.assertEquals(-acceptance, MetaModel.swapAcceptance(cold, hot), 1e-6);
+
+        // a rescale to a new temperature leaves the scores alone as well
+        lookups = scores.hits() + scores.misses();
+        hot.setBeta(0.25);
+        Assert.assertEquals(lookups, scores.hits() + scores.misses());
+        Assert.assertEquals(hot.computeLogLikelihood(), hot.logLikelihood(), 1e-6);
+    }
+}